@@ -0,0 +1,37 @@
+package org.wisdom.orientdb.benchmarks.model;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * The entity used by the benchmarks.
+ */
+@Entity
+public class Item {
+    @Id
+    private String id;
+
+    private String name;
+
+    private int quantity;
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+}
@@ -0,0 +1,109 @@
+package org.wisdom.orientdb.runtime;
+
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.object.db.OObjectDatabaseTx;
+import org.wisdom.orientdb.benchmarks.model.Item;
+import org.wisdom.orientdb.conf.WOrientConf;
+import org.wisdom.orientdb.document.OrientDbDocumentCommand;
+import org.wisdom.orientdb.object.OrientDbRepoCommand;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A database created for a benchmark trial, and the repositories built on top of it.
+ */
+final class BenchmarkDatabase {
+    private static final String USER = "admin";
+    private static final String PASS = "admin";
+
+    private final String url;
+    private final File folder;
+
+    /**
+     * @param storage <code>memory</code> or <code>plocal</code>.
+     */
+    BenchmarkDatabase(String storage) throws IOException {
+        if ("memory".equals(storage)) {
+            folder = null;
+            url = "memory:bench-" + UUID.randomUUID();
+        } else if ("plocal".equals(storage)) {
+            folder = Files.createTempDirectory("wisdom-orientdb-bench").toFile();
+            url = "plocal:" + folder.getAbsolutePath();
+        } else {
+            throw new IllegalArgumentException("Unknown storage " + storage);
+        }
+
+        try (OObjectDatabaseTx db = new OObjectDatabaseTx(url).create()) {
+            db.getEntityManager().registerEntityClass(Item.class);
+        }
+    }
+
+    /**
+     * @return A configuration of the database, the pool is sized for the largest thread count used.
+     */
+    WOrientConf conf(WOrientConf.PoolType poolType) {
+        WOrientConf conf = new WOrientConf("bench", url, USER, PASS,
+                Collections.singletonList(Item.class.getPackage().getName()));
+        conf.setPoolMax(128);
+        conf.setPoolType(poolType);
+        return conf;
+    }
+
+    OrientDbRepositoryImpl objectRepository(final WOrientConf conf) {
+        return new OrientDbRepositoryImpl(new OrientDbRepoCommand() {
+            public WOrientConf getConf() {
+                return conf;
+            }
+
+            public List<Class<?>> getEntityClass() {
+                return Collections.<Class<?>>singletonList(Item.class);
+            }
+
+            public void init(OObjectDatabaseTx db) {
+            }
+
+            public void destroy(OObjectDatabaseTx db) {
+            }
+        });
+    }
+
+    OrientDbDocServiceImpl documentService(final WOrientConf conf) {
+        return new OrientDbDocServiceImpl(new OrientDbDocumentCommand() {
+            public WOrientConf getConf() {
+                return conf;
+            }
+
+            public void init(ODatabaseDocumentTx db) {
+            }
+
+            public void destroy(ODatabaseDocumentTx db) {
+            }
+        }, null);
+    }
+
+    void drop() {
+        ODatabaseDocumentTx db = new ODatabaseDocumentTx(url).open(USER, PASS);
+        db.drop();
+
+        if (folder != null) {
+            delete(folder);
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+}
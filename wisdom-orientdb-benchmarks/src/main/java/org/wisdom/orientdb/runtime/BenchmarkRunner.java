@@ -0,0 +1,40 @@
+package org.wisdom.orientdb.runtime;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the benchmarks at several thread counts.
+ *
+ * <code>java -jar target/benchmarks.jar [regexp...]</code>, the thread counts can be changed with the
+ * <code>threads</code> system property, e.g <code>-Dthreads=1,16</code>.
+ */
+public final class BenchmarkRunner {
+    private static final String DEFAULT_THREADS = "1,8,64";
+
+    private BenchmarkRunner() {
+        //Main class
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (String threads : System.getProperty("threads", DEFAULT_THREADS).split(",")) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .threads(Integer.parseInt(threads.trim()))
+                    .resultFormat(ResultFormatType.CSV)
+                    .result("target/jmh-" + threads.trim() + "-threads.csv");
+
+            if (args.length == 0) {
+                options.include(BenchmarkRunner.class.getPackage().getName() + ".*Benchmark");
+            }
+
+            for (String include : args) {
+                options.include(include);
+            }
+
+            new Runner(options.build()).run();
+        }
+    }
+}
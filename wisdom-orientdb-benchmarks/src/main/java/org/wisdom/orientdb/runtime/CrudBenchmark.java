@@ -0,0 +1,117 @@
+package org.wisdom.orientdb.runtime;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.wisdom.orientdb.benchmarks.model.Item;
+import org.wisdom.orientdb.conf.WOrientConf;
+import org.wisdom.orientdb.object.OrientDbCrud;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.wisdom.orientdb.object.OrientDbFilter.eq;
+
+/**
+ * Throughput of the {@link OrientDbCrudService} hot paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CrudBenchmark {
+    private static final int ENTITIES = 10000;
+    private static final int QUANTITIES = 1000;
+
+    @Param({"memory", "plocal"})
+    public String storage;
+
+    @Param({"CLASSIC", "PARTITIONED"})
+    public WOrientConf.PoolType poolType;
+
+    private BenchmarkDatabase database;
+    private OrientDbCrud<Item, String> crud;
+    private List<String> ids;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = new BenchmarkDatabase(storage);
+        crud = new OrientDbCrudService<>(database.objectRepository(database.conf(poolType)), Item.class);
+
+        List<Item> items = new ArrayList<>(ENTITIES);
+        for (int i = 0; i < ENTITIES; i++) {
+            items.add(newItem(i));
+        }
+
+        ids = new ArrayList<>(ENTITIES);
+        for (Item item : crud.save(items)) {
+            ids.add(item.getId());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ((OrientDbRepositoryImpl) crud.getRepository()).destroy();
+        database.drop();
+    }
+
+    @Benchmark
+    public Item save() {
+        return crud.save(newItem(ThreadLocalRandom.current().nextInt(QUANTITIES)));
+    }
+
+    @Benchmark
+    public Item findOne() {
+        return crud.findOne(randomId());
+    }
+
+    @Benchmark
+    public void findAllWithFilter(Blackhole hole) {
+        for (Item item : crud.findAll(eq("quantity", ThreadLocalRandom.current().nextInt(QUANTITIES)))) {
+            hole.consume(item);
+        }
+    }
+
+    @Benchmark
+    public long count() {
+        return crud.count();
+    }
+
+    @Benchmark
+    public Item transactionalBlock() throws Exception {
+        return crud.executeTransactionalBlock(new Callable<Item>() {
+            @Override
+            public Item call() throws Exception {
+                Item item = crud.findOne(randomId());
+                return crud.save(newItem(item.getQuantity()));
+            }
+        });
+    }
+
+    private String randomId() {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    private static Item newItem(int quantity) {
+        Item item = new Item();
+        item.setName("item-" + quantity);
+        item.setQuantity(quantity % QUANTITIES);
+        return item;
+    }
+}
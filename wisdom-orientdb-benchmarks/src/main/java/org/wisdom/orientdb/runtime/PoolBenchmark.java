@@ -0,0 +1,92 @@
+package org.wisdom.orientdb.runtime;
+
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.object.db.OObjectDatabaseTx;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wisdom.orientdb.conf.WOrientConf;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the connection acquire/release of the {@link OrientDbRepositoryImpl} pools and of
+ * {@link OrientDbDocServiceImpl#acquire()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PoolBenchmark {
+
+    @Param({"memory", "plocal"})
+    public String storage;
+
+    @Param({"CLASSIC", "PARTITIONED"})
+    public WOrientConf.PoolType poolType;
+
+    private BenchmarkDatabase database;
+    private OrientDbRepositoryImpl repo;
+    private OrientDbDocServiceImpl docService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = new BenchmarkDatabase(storage);
+        WOrientConf conf = database.conf(poolType);
+        repo = database.objectRepository(conf);
+        docService = database.documentService(conf);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        try {
+            repo.destroy();
+        } finally {
+            try {
+                docService.close(); //The document service is not registered
+            } finally {
+                database.drop();
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean objectAcquireRelease() {
+        OObjectDatabaseTx db = repo.acquireDb();
+        boolean closed = db.isClosed();
+        db.close();
+        return closed;
+    }
+
+    @Benchmark
+    public boolean transactionManagerAcquireRelease() {
+        OrientDbTransactionManager txManager = repo.getTransactionManager();
+        OObjectDatabaseTx db = txManager.acquireDb();
+        boolean closed = db.isClosed();
+        txManager.releaseDb();
+        return closed;
+    }
+
+    /**
+     * The document service always uses the partitioned pool, the pool type parameter does not apply.
+     */
+    @Benchmark
+    public boolean documentAcquireRelease() {
+        ODatabaseDocumentTx db = docService.acquire();
+        boolean closed = db.isClosed();
+        db.close();
+        return closed;
+    }
+}
@@ -44,6 +44,14 @@ class OrientDbDocServiceImpl implements OrientDbDocumentService {
             repoCmd.destroy(db); //Call the OrientDbDocumentCommand destroy callback
         }
 
+        close();
+    }
+
+    /**
+     * Close the pool of the service, without calling the destroy callback. Used on its own for a service which has
+     * never been registered.
+     */
+    void close(){
         pool.close();
     }
 
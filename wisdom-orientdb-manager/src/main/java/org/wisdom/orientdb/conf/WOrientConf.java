@@ -26,6 +26,29 @@ public final class WOrientConf {
     public static final String ORIENTDB_TXTYPE = "txtype";
     public static final String ORIENTDB_POOLMIN = "poolmin";
     public static final String ORIENTDB_POOLMAX = "poolmax";
+    public static final String ORIENTDB_POOLTYPE = "pooltype";
+    public static final String ORIENTDB_PAGESIZE = "pagesize";
+    public static final String ORIENTDB_BATCHSIZE = "batchsize";
+    public static final String ORIENTDB_MASSIVEINSERT = "massiveinsert";
+    public static final String ORIENTDB_TXRETRIES = "txretries";
+    public static final String ORIENTDB_TXRETRYDELAY = "txretrydelay";
+    public static final String ORIENTDB_TXRETRYMAXDELAY = "txretrymaxdelay";
+    public static final String ORIENTDB_CACHESIZE = "cachesize";
+    public static final String ORIENTDB_CACHETTL = "cachettl";
+    public static final String ORIENTDB_CACHELIVE = "cachelive";
+    public static final String ORIENTDB_QUERYCACHESIZE = "querycachesize";
+    public static final String ORIENTDB_QUERYCACHETTL = "querycachettl";
+    public static final String ORIENTDB_ASYNCTHREADS = "asyncthreads";
+    public static final String ORIENTDB_ASYNCQUEUESIZE = "asyncqueuesize";
+    public static final String ORIENTDB_ASYNCMODE = "asyncmode";
+    public static final String ORIENTDB_SCANPARALLELISM = "scanparallelism";
+    public static final String ORIENTDB_COUNTCACHETTL = "countcachettl";
+    public static final String ORIENTDB_FETCHPLAN = "fetchplan";
+    public static final String ORIENTDB_STARTUP = "startup";
+    public static final String ORIENTDB_POOLWARMUP = "poolwarmup";
+    public static final String ORIENTDB_POOLVALIDATION = "poolvalidation";
+    public static final String ORIENTDB_POOLACQUIRETIMEOUT = "poolacquiretimeout";
+    public static final String ORIENTDB_POOLMAXWAITERS = "poolmaxwaiters";
 
     private final String alias;
     private final String url;
@@ -38,6 +61,29 @@ public final class WOrientConf {
     private TXTYPE txtype = TXTYPE.OPTIMISTIC;
     private Integer poolMin = 1;
     private Integer poolMax = 20;
+    private PoolType poolType = PoolType.CLASSIC;
+    private Integer pageSize = 100;
+    private Integer batchSize = 1000;
+    private Boolean massiveInsert = false;
+    private Integer txRetries = 0;
+    private Long txRetryDelay = 10L;
+    private Long txRetryMaxDelay = 1000L;
+    private Integer cacheSize = 0;
+    private Long cacheTtl = 60000L;
+    private Boolean cacheLive = false;
+    private Integer queryCacheSize = 0;
+    private Long queryCacheTtl = 60000L;
+    private Integer asyncThreads = 8;
+    private Integer asyncQueueSize = 1000;
+    private AsyncMode asyncMode = AsyncMode.POOLED;
+    private Integer scanParallelism = 1;
+    private Long countCacheTtl = 0L;
+    private String fetchPlan = "*:0";
+    private Startup startup = Startup.SYNC;
+    private Boolean poolWarmUp = false;
+    private Long poolValidation = 0L;
+    private Long poolAcquireTimeout = 0L;
+    private Integer poolMaxWaiters = -1;
 
 
 
@@ -61,6 +107,29 @@ public final class WOrientConf {
         this.setTxType(config.get(ORIENTDB_TXTYPE, TXTYPE.class, txtype));
         this.setPoolMin(config.getIntegerWithDefault(ORIENTDB_POOLMIN,poolMin));
         this.setPoolMax(config.getIntegerWithDefault(ORIENTDB_POOLMAX,poolMax));
+        this.setPoolType(config.get(ORIENTDB_POOLTYPE, PoolType.class, poolType));
+        this.setPageSize(config.getIntegerWithDefault(ORIENTDB_PAGESIZE,pageSize));
+        this.setBatchSize(config.getIntegerWithDefault(ORIENTDB_BATCHSIZE,batchSize));
+        this.setMassiveInsert(config.getBooleanWithDefault(ORIENTDB_MASSIVEINSERT,massiveInsert));
+        this.setTxRetries(config.getIntegerWithDefault(ORIENTDB_TXRETRIES,txRetries));
+        this.setTxRetryDelay(config.getLongWithDefault(ORIENTDB_TXRETRYDELAY,txRetryDelay));
+        this.setTxRetryMaxDelay(config.getLongWithDefault(ORIENTDB_TXRETRYMAXDELAY,txRetryMaxDelay));
+        this.setCacheSize(config.getIntegerWithDefault(ORIENTDB_CACHESIZE,cacheSize));
+        this.setCacheTtl(config.getLongWithDefault(ORIENTDB_CACHETTL,cacheTtl));
+        this.setCacheLive(config.getBooleanWithDefault(ORIENTDB_CACHELIVE,cacheLive));
+        this.setQueryCacheSize(config.getIntegerWithDefault(ORIENTDB_QUERYCACHESIZE,queryCacheSize));
+        this.setQueryCacheTtl(config.getLongWithDefault(ORIENTDB_QUERYCACHETTL,queryCacheTtl));
+        this.setAsyncThreads(config.getIntegerWithDefault(ORIENTDB_ASYNCTHREADS,asyncThreads));
+        this.setAsyncQueueSize(config.getIntegerWithDefault(ORIENTDB_ASYNCQUEUESIZE,asyncQueueSize));
+        this.setAsyncMode(config.get(ORIENTDB_ASYNCMODE, AsyncMode.class, asyncMode));
+        this.setScanParallelism(config.getIntegerWithDefault(ORIENTDB_SCANPARALLELISM,scanParallelism));
+        this.setCountCacheTtl(config.getLongWithDefault(ORIENTDB_COUNTCACHETTL,countCacheTtl));
+        this.setFetchPlan(config.getWithDefault(ORIENTDB_FETCHPLAN,fetchPlan));
+        this.setStartup(config.get(ORIENTDB_STARTUP, Startup.class, startup));
+        this.setPoolWarmUp(config.getBooleanWithDefault(ORIENTDB_POOLWARMUP,poolWarmUp));
+        this.setPoolValidation(config.getLongWithDefault(ORIENTDB_POOLVALIDATION,poolValidation));
+        this.setPoolAcquireTimeout(config.getLongWithDefault(ORIENTDB_POOLACQUIRETIMEOUT,poolAcquireTimeout));
+        this.setPoolMaxWaiters(config.getIntegerWithDefault(ORIENTDB_POOLMAXWAITERS,poolMaxWaiters));
     }
 
     public String getAlias() {
@@ -123,6 +192,359 @@ public final class WOrientConf {
         poolMax = max;
     }
 
+    /**
+     * @return The type of connection pool used by the object repository ({@link PoolType#CLASSIC} by default).
+     */
+    public PoolType getPoolType(){
+        return poolType;
+    }
+
+    public void setPoolType(PoolType type){
+        if(type == null){
+            throw new NullPointerException(ORIENTDB_POOLTYPE+" cannot be null.");
+        }
+
+        poolType = type;
+    }
+
+    public Integer getPageSize(){
+        return pageSize;
+    }
+
+    public void setPageSize(Integer size){
+        if(size == null || size < 1){
+            throw new IllegalArgumentException(ORIENTDB_PAGESIZE+" must be a positive integer.");
+        }
+
+        pageSize = size;
+    }
+
+    public Integer getBatchSize(){
+        return batchSize;
+    }
+
+    public void setBatchSize(Integer size){
+        if(size == null || size < 1){
+            throw new IllegalArgumentException(ORIENTDB_BATCHSIZE+" must be a positive integer.");
+        }
+
+        batchSize = size;
+    }
+
+    public Boolean getMassiveInsert(){
+        return massiveInsert;
+    }
+
+    public void setMassiveInsert(Boolean massive){
+        if(massive == null){
+            throw new NullPointerException(ORIENTDB_MASSIVEINSERT+" cannot be null.");
+        }
+
+        massiveInsert = massive;
+    }
+
+    /**
+     * @return The number of times a transactional block is retried when it fails because of a concurrent
+     * modification (<code>0</code> by default).
+     */
+    public Integer getTxRetries(){
+        return txRetries;
+    }
+
+    public void setTxRetries(Integer retries){
+        if(retries == null || retries < 0){
+            throw new IllegalArgumentException(ORIENTDB_TXRETRIES+" must be a positive integer or 0.");
+        }
+
+        txRetries = retries;
+    }
+
+    /**
+     * @return The base delay in milliseconds before retrying a transactional block, it is doubled at each attempt
+     * and randomized.
+     */
+    public Long getTxRetryDelay(){
+        return txRetryDelay;
+    }
+
+    public void setTxRetryDelay(Long delay){
+        if(delay == null || delay < 0){
+            throw new IllegalArgumentException(ORIENTDB_TXRETRYDELAY+" must be a positive number or 0.");
+        }
+
+        txRetryDelay = delay;
+    }
+
+    /**
+     * @return The maximum delay in milliseconds before retrying a transactional block.
+     */
+    public Long getTxRetryMaxDelay(){
+        return txRetryMaxDelay;
+    }
+
+    public void setTxRetryMaxDelay(Long delay){
+        if(delay == null || delay < 0){
+            throw new IllegalArgumentException(ORIENTDB_TXRETRYMAXDELAY+" must be a positive number or 0.");
+        }
+
+        txRetryMaxDelay = delay;
+    }
+
+    /**
+     * @return The maximum number of entities kept in the second level cache of each entity class, <code>0</code> (the
+     * default) disables the cache.
+     */
+    public Integer getCacheSize(){
+        return cacheSize;
+    }
+
+    public void setCacheSize(Integer size){
+        if(size == null || size < 0){
+            throw new IllegalArgumentException(ORIENTDB_CACHESIZE+" must be a positive integer or 0.");
+        }
+
+        cacheSize = size;
+    }
+
+    /**
+     * @return The time to live in milliseconds of the entities in the second level cache, <code>0</code> for no
+     * expiration.
+     */
+    public Long getCacheTtl(){
+        return cacheTtl;
+    }
+
+    public void setCacheTtl(Long ttl){
+        if(ttl == null || ttl < 0){
+            throw new IllegalArgumentException(ORIENTDB_CACHETTL+" must be a positive number or 0.");
+        }
+
+        cacheTtl = ttl;
+    }
+
+    /**
+     * @return <code>true</code> if the second level caches are invalidated by OrientDB live queries, so that the
+     * changes made by the other clients of the database are evicted.
+     */
+    public Boolean getCacheLive(){
+        return cacheLive;
+    }
+
+    public void setCacheLive(Boolean live){
+        if(live == null){
+            throw new NullPointerException(ORIENTDB_CACHELIVE+" cannot be null.");
+        }
+
+        cacheLive = live;
+    }
+
+    /**
+     * @return The maximum number of query results kept by the query cache of each entity class, <code>0</code> (the
+     * default) disables the cache.
+     */
+    public Integer getQueryCacheSize(){
+        return queryCacheSize;
+    }
+
+    public void setQueryCacheSize(Integer size){
+        if(size == null || size < 0){
+            throw new IllegalArgumentException(ORIENTDB_QUERYCACHESIZE+" must be a positive integer or 0.");
+        }
+
+        queryCacheSize = size;
+    }
+
+    /**
+     * @return The time to live in milliseconds of the query results in the query cache, <code>0</code> for no
+     * expiration.
+     */
+    public Long getQueryCacheTtl(){
+        return queryCacheTtl;
+    }
+
+    public void setQueryCacheTtl(Long ttl){
+        if(ttl == null || ttl < 0){
+            throw new IllegalArgumentException(ORIENTDB_QUERYCACHETTL+" must be a positive number or 0.");
+        }
+
+        queryCacheTtl = ttl;
+    }
+
+    /**
+     * @return The maximum number of threads running the operations of the AsyncOrientDbCrud services of the
+     * repository.
+     */
+    public Integer getAsyncThreads(){
+        return asyncThreads;
+    }
+
+    public void setAsyncThreads(Integer threads){
+        if(threads == null || threads < 1){
+            throw new IllegalArgumentException(ORIENTDB_ASYNCTHREADS+" must be a strictly positive integer.");
+        }
+
+        asyncThreads = threads;
+    }
+
+    /**
+     * @return The maximum number of asynchronous operations waiting for a thread, the next ones are rejected.
+     */
+    public Integer getAsyncQueueSize(){
+        return asyncQueueSize;
+    }
+
+    public void setAsyncQueueSize(Integer size){
+        if(size == null || size < 1){
+            throw new IllegalArgumentException(ORIENTDB_ASYNCQUEUESIZE+" must be a strictly positive integer.");
+        }
+
+        asyncQueueSize = size;
+    }
+
+    /**
+     * @return The threads running the operations of the AsyncOrientDbCrud services ({@link AsyncMode#POOLED} by
+     * default).
+     */
+    public AsyncMode getAsyncMode(){
+        return asyncMode;
+    }
+
+    public void setAsyncMode(AsyncMode mode){
+        if(mode == null){
+            throw new NullPointerException(ORIENTDB_ASYNCMODE+" cannot be null.");
+        }
+
+        asyncMode = mode;
+    }
+
+    /**
+     * @return The number of threads scanning an entity class when a filter cannot be pushed down to OrientDB,
+     * <code>1</code> (the default) for a sequential scan.
+     */
+    public Integer getScanParallelism(){
+        return scanParallelism;
+    }
+
+    public void setScanParallelism(Integer parallelism){
+        if(parallelism == null || parallelism < 1){
+            throw new IllegalArgumentException(ORIENTDB_SCANPARALLELISM+" must be a strictly positive integer.");
+        }
+
+        scanParallelism = parallelism;
+    }
+
+    /**
+     * @return The time in milliseconds during which the number of entities of a class returned by
+     * <code>count()</code> is reused, <code>0</code> (the default) to count them at each call.
+     */
+    public Long getCountCacheTtl(){
+        return countCacheTtl;
+    }
+
+    public void setCountCacheTtl(Long ttl){
+        if(ttl == null || ttl < 0){
+            throw new IllegalArgumentException(ORIENTDB_COUNTCACHETTL+" must be a positive number or 0.");
+        }
+
+        countCacheTtl = ttl;
+    }
+
+    /**
+     * @return The OrientDB fetch plan used by <code>findAll(ids)</code> to load the linked records along the entities,
+     * <code>*:0</code> (the default) loads them lazily.
+     */
+    public String getFetchPlan(){
+        return fetchPlan;
+    }
+
+    public void setFetchPlan(String plan){
+        if(plan == null){
+            throw new NullPointerException(ORIENTDB_FETCHPLAN+" cannot be null.");
+        }
+
+        fetchPlan = plan;
+    }
+
+    /**
+     * @return How the repository opens the database and publishes its crud services ({@link Startup#SYNC} by
+     * default).
+     */
+    public Startup getStartup(){
+        return startup;
+    }
+
+    public void setStartup(Startup mode){
+        if(mode == null){
+            throw new NullPointerException(ORIENTDB_STARTUP+" cannot be null.");
+        }
+
+        startup = mode;
+    }
+
+    /**
+     * @return <code>true</code> if <code>poolmin</code> connections are opened when the repository starts, with the
+     * metadata of the entity classes loaded, <code>false</code> (the default) to open them on demand.
+     */
+    public Boolean getPoolWarmUp(){
+        return poolWarmUp;
+    }
+
+    public void setPoolWarmUp(Boolean warmUp){
+        if(warmUp == null){
+            throw new NullPointerException(ORIENTDB_POOLWARMUP+" cannot be null.");
+        }
+
+        poolWarmUp = warmUp;
+    }
+
+    /**
+     * @return The time in milliseconds between two validations of the idle connections of the pool, <code>0</code>
+     * (the default) to never validate them.
+     */
+    public Long getPoolValidation(){
+        return poolValidation;
+    }
+
+    public void setPoolValidation(Long interval){
+        if(interval == null || interval < 0){
+            throw new IllegalArgumentException(ORIENTDB_POOLVALIDATION+" must be a positive number or 0.");
+        }
+
+        poolValidation = interval;
+    }
+
+    /**
+     * @return The maximum time in milliseconds a thread waits for a connection once the <code>poolmax</code>
+     * connections are in use, <code>0</code> (the default) to wait until one is released.
+     */
+    public Long getPoolAcquireTimeout(){
+        return poolAcquireTimeout;
+    }
+
+    public void setPoolAcquireTimeout(Long timeout){
+        if(timeout == null || timeout < 0){
+            throw new IllegalArgumentException(ORIENTDB_POOLACQUIRETIMEOUT+" must be a positive number or 0.");
+        }
+
+        poolAcquireTimeout = timeout;
+    }
+
+    /**
+     * @return The maximum number of threads waiting for a connection once the <code>poolmax</code> connections are in
+     * use, <code>0</code> to never wait, <code>-1</code> (the default) for no limit.
+     */
+    public Integer getPoolMaxWaiters(){
+        return poolMaxWaiters;
+    }
+
+    public void setPoolMaxWaiters(Integer waiters){
+        if(waiters == null || waiters < -1){
+            throw new IllegalArgumentException(ORIENTDB_POOLMAXWAITERS+" must be a positive integer, 0 or -1.");
+        }
+
+        poolMaxWaiters = waiters;
+    }
+
     public Dictionary<String,Object> toDico(){
         Dictionary<String,Object> dico = new Hashtable<>(5);
         dico.put("name",alias);
@@ -133,6 +555,29 @@ public final class WOrientConf {
         dico.put(ORIENTDB_TXTYPE,txtype);
         dico.put(ORIENTDB_POOLMIN,poolMin);
         dico.put(ORIENTDB_POOLMAX,poolMax);
+        dico.put(ORIENTDB_POOLTYPE,poolType);
+        dico.put(ORIENTDB_PAGESIZE,pageSize);
+        dico.put(ORIENTDB_BATCHSIZE,batchSize);
+        dico.put(ORIENTDB_MASSIVEINSERT,massiveInsert);
+        dico.put(ORIENTDB_TXRETRIES,txRetries);
+        dico.put(ORIENTDB_TXRETRYDELAY,txRetryDelay);
+        dico.put(ORIENTDB_TXRETRYMAXDELAY,txRetryMaxDelay);
+        dico.put(ORIENTDB_CACHESIZE,cacheSize);
+        dico.put(ORIENTDB_CACHETTL,cacheTtl);
+        dico.put(ORIENTDB_CACHELIVE,cacheLive);
+        dico.put(ORIENTDB_QUERYCACHESIZE,queryCacheSize);
+        dico.put(ORIENTDB_QUERYCACHETTL,queryCacheTtl);
+        dico.put(ORIENTDB_ASYNCTHREADS,asyncThreads);
+        dico.put(ORIENTDB_ASYNCQUEUESIZE,asyncQueueSize);
+        dico.put(ORIENTDB_ASYNCMODE,asyncMode);
+        dico.put(ORIENTDB_SCANPARALLELISM,scanParallelism);
+        dico.put(ORIENTDB_COUNTCACHETTL,countCacheTtl);
+        dico.put(ORIENTDB_FETCHPLAN,fetchPlan);
+        dico.put(ORIENTDB_STARTUP,startup);
+        dico.put(ORIENTDB_POOLWARMUP,poolWarmUp);
+        dico.put(ORIENTDB_POOLVALIDATION,poolValidation);
+        dico.put(ORIENTDB_POOLACQUIRETIMEOUT,poolAcquireTimeout);
+        dico.put(ORIENTDB_POOLMAXWAITERS,poolMaxWaiters);
         return dico;
     }
 
@@ -214,6 +659,88 @@ public final class WOrientConf {
                 ", txtype=" + txtype +
                 ", poolmin='" + poolMin + '\'' +
                 ", poolmax='" + poolMax + '\'' +
+                ", pooltype=" + poolType +
+                ", pagesize='" + pageSize + '\'' +
+                ", batchsize='" + batchSize + '\'' +
+                ", massiveinsert=" + massiveInsert +
+                ", txretries=" + txRetries +
+                ", txretrydelay=" + txRetryDelay +
+                ", txretrymaxdelay=" + txRetryMaxDelay +
+                ", cachesize=" + cacheSize +
+                ", cachettl=" + cacheTtl +
+                ", cachelive=" + cacheLive +
+                ", querycachesize=" + queryCacheSize +
+                ", querycachettl=" + queryCacheTtl +
+                ", asyncthreads=" + asyncThreads +
+                ", asyncqueuesize=" + asyncQueueSize +
+                ", asyncmode=" + asyncMode +
+                ", scanparallelism=" + scanParallelism +
+                ", countcachettl=" + countCacheTtl +
+                ", fetchplan='" + fetchPlan + '\'' +
+                ", startup=" + startup +
+                ", poolwarmup=" + poolWarmUp +
+                ", poolvalidation=" + poolValidation +
+                ", poolacquiretimeout=" + poolAcquireTimeout +
+                ", poolmaxwaiters=" + poolMaxWaiters +
                 '}';
     }
-}
\ No newline at end of file
+
+    /**
+     * The connection pools available for the object repositories.
+     */
+    public enum PoolType {
+        /**
+         * The OrientDB object database pool, sized by <code>poolmin</code> and <code>poolmax</code>. All the threads
+         * share a single lock to acquire and release their connection.
+         */
+        CLASSIC,
+
+        /**
+         * The OrientDB partitioned database pool, the connections are spread over several partitions picked by
+         * thread, which reduces the contention when many threads use the repository. Only <code>poolmax</code> is
+         * used, the connections are created on demand.
+         */
+        PARTITIONED
+    }
+
+    /**
+     * The threads running the operations of the AsyncOrientDbCrud services.
+     */
+    public enum AsyncMode {
+        /**
+         * A pool of <code>asyncthreads</code> platform threads, the waiting operations are queued, up to
+         * <code>asyncqueuesize</code>.
+         */
+        POOLED,
+
+        /**
+         * A virtual thread per operation, up to <code>asyncqueuesize</code> operations at once, of which at most
+         * <code>poolmax</code> use a connection at the same time. It requires a Java runtime with virtual threads,
+         * {@link #POOLED} is used otherwise.
+         */
+        VIRTUAL
+    }
+
+    /**
+     * How a repository opens its database and publishes its crud services.
+     */
+    public enum Startup {
+        /**
+         * The database is opened, or created in dev and test mode, and the crud services are published by the thread
+         * which starts the repository, one repository after the other.
+         */
+        SYNC,
+
+        /**
+         * The database is opened and the crud services are published by a startup thread, the repositories start in
+         * parallel.
+         */
+        PARALLEL,
+
+        /**
+         * The crud services are published at once and the database is opened by the first connection acquired from
+         * the repository.
+         */
+        LAZY
+    }
+}
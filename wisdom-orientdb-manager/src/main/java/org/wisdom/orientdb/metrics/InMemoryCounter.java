@@ -0,0 +1,25 @@
+package org.wisdom.orientdb.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link OrientDbCounter} of the {@link InMemoryOrientDbMetrics}.
+ */
+class InMemoryCounter implements OrientDbCounter {
+    private final LongAdder count = new LongAdder();
+
+    @Override
+    public void increment() {
+        count.increment();
+    }
+
+    @Override
+    public void add(long n) {
+        count.add(n);
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+}
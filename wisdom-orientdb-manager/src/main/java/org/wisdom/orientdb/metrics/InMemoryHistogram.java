@@ -0,0 +1,94 @@
+package org.wisdom.orientdb.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link OrientDbHistogram} of the {@link InMemoryOrientDbMetrics}.
+ *
+ * The values are counted in power of two buckets, the percentiles are therefore approximated by the upper bound of
+ * their bucket (at most twice the actual value), in exchange of a constant memory footprint and lock free recording.
+ */
+class InMemoryHistogram implements OrientDbHistogram {
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    @Override
+    public void record(long value) {
+        long positive = Math.max(value, 0L);
+
+        buckets.incrementAndGet(bucket(positive));
+        count.increment();
+        sum.add(positive);
+        min.accumulate(positive);
+        max.accumulate(positive);
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getMin() {
+        return getCount() == 0 ? 0L : min.get();
+    }
+
+    @Override
+    public long getMax() {
+        return max.get();
+    }
+
+    @Override
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0d : (double) sum.sum() / n;
+    }
+
+    @Override
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("The percentile must be between 0 and 100.");
+        }
+
+        long n = getCount();
+
+        if (n == 0) {
+            return 0L;
+        }
+
+        long rank = Math.max(1L, (long) Math.ceil(n * percentile / 100d));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+
+            if (seen >= rank) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+
+        return getMax();
+    }
+
+    /**
+     * @return The index of the bucket of the value, bucket <code>i</code> holds the values lower than 2^i.
+     */
+    private static int bucket(long value) {
+        return Math.min(BUCKETS - 1, BUCKETS - Long.numberOfLeadingZeros(value));
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+}
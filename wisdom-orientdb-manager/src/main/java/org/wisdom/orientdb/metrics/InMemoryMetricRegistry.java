@@ -0,0 +1,66 @@
+package org.wisdom.orientdb.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link OrientDbMetricRegistry} of the {@link InMemoryOrientDbMetrics}.
+ */
+class InMemoryMetricRegistry implements OrientDbMetricRegistry {
+    private final String alias;
+
+    private final ConcurrentMap<String, OrientDbCounter> counters = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, OrientDbHistogram> histograms = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    InMemoryMetricRegistry(String alias) {
+        this.alias = alias;
+    }
+
+    @Override
+    public String getAlias() {
+        return alias;
+    }
+
+    @Override
+    public OrientDbCounter counter(String name) {
+        OrientDbCounter counter = counters.get(name);
+        return counter != null ? counter : counters.computeIfAbsent(name, k -> new InMemoryCounter());
+    }
+
+    @Override
+    public OrientDbHistogram histogram(String name) {
+        OrientDbHistogram histogram = histograms.get(name);
+        return histogram != null ? histogram : histograms.computeIfAbsent(name, k -> new InMemoryHistogram());
+    }
+
+    @Override
+    public void gauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    @Override
+    public void removeGauge(String name, LongSupplier gauge) {
+        gauges.remove(name, gauge);
+    }
+
+    @Override
+    public Map<String, OrientDbCounter> getCounters() {
+        return Collections.unmodifiableMap(counters);
+    }
+
+    @Override
+    public Map<String, OrientDbHistogram> getHistograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    @Override
+    public Map<String, LongSupplier> getGauges() {
+        return Collections.unmodifiableMap(gauges);
+    }
+}
@@ -0,0 +1,43 @@
+package org.wisdom.orientdb.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An {@link OrientDbMetrics} which keeps the metrics in memory.
+ */
+public class InMemoryOrientDbMetrics implements OrientDbMetrics {
+    private final ConcurrentMap<String, OrientDbMetricRegistry> registries = new ConcurrentHashMap<>();
+
+    @Override
+    public OrientDbMetricRegistry getRegistry(String alias) {
+        OrientDbMetricRegistry registry = registries.get(alias);
+
+        if (registry == null) {
+            synchronized (registries) {
+                registry = registries.get(alias);
+
+                if (registry == null) {
+                    registry = createRegistry(alias);
+                    registries.put(alias, registry);
+                }
+            }
+        }
+
+        return registry;
+    }
+
+    @Override
+    public Collection<OrientDbMetricRegistry> getRegistries() {
+        return Collections.unmodifiableCollection(registries.values());
+    }
+
+    /**
+     * Create the registry of a repository, called once per alias.
+     */
+    protected OrientDbMetricRegistry createRegistry(String alias) {
+        return new InMemoryMetricRegistry(alias);
+    }
+}
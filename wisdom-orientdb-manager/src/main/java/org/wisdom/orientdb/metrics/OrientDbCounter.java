@@ -0,0 +1,13 @@
+package org.wisdom.orientdb.metrics;
+
+/**
+ * A monotonic counter.
+ */
+public interface OrientDbCounter {
+
+    void increment();
+
+    void add(long n);
+
+    long getCount();
+}
@@ -0,0 +1,23 @@
+package org.wisdom.orientdb.metrics;
+
+/**
+ * The distribution of recorded values, the latencies are recorded in nanoseconds.
+ */
+public interface OrientDbHistogram {
+
+    void record(long value);
+
+    long getCount();
+
+    long getMin();
+
+    long getMax();
+
+    double getMean();
+
+    /**
+     * @param percentile The percentile, between 0 and 100.
+     * @return An upper bound of the value at the given percentile, <code>0</code> if nothing has been recorded.
+     */
+    long getPercentile(double percentile);
+}
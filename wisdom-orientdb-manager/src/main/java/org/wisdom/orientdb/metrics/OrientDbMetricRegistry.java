@@ -0,0 +1,45 @@
+package org.wisdom.orientdb.metrics;
+
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics of a repository, identified by the alias of its {@link org.wisdom.orientdb.conf.WOrientConf}.
+ *
+ * The metrics are created on first use and identified by their name, a dot separated path such as
+ * <code>crud.Todo.save</code>.
+ */
+public interface OrientDbMetricRegistry {
+
+    /**
+     * @return The alias of the repository configuration.
+     */
+    String getAlias();
+
+    /**
+     * @return The counter of the given name, created if needed.
+     */
+    OrientDbCounter counter(String name);
+
+    /**
+     * @return The histogram of the given name, created if needed.
+     */
+    OrientDbHistogram histogram(String name);
+
+    /**
+     * Register a gauge, its value is read each time the metrics are exported. It replaces the gauge previously
+     * registered with the same name.
+     */
+    void gauge(String name, LongSupplier gauge);
+
+    /**
+     * Unregister a gauge, unless another gauge has been registered with the same name since.
+     */
+    void removeGauge(String name, LongSupplier gauge);
+
+    Map<String, OrientDbCounter> getCounters();
+
+    Map<String, OrientDbHistogram> getHistograms();
+
+    Map<String, LongSupplier> getGauges();
+}
@@ -0,0 +1,21 @@
+package org.wisdom.orientdb.metrics;
+
+import java.util.Collection;
+
+/**
+ * The metrics service used by the wisdom-orientdb repositories.
+ *
+ * A default in-process implementation, exported through JMX, is provided by the manager bundle. Another
+ * implementation can be published with a higher service ranking in order to forward the metrics to a monitoring
+ * system.
+ */
+public interface OrientDbMetrics {
+
+    /**
+     * @param alias The alias of the repository configuration.
+     * @return The metrics of the repository, created if needed.
+     */
+    OrientDbMetricRegistry getRegistry(String alias);
+
+    Collection<OrientDbMetricRegistry> getRegistries();
+}
@@ -0,0 +1,66 @@
+package org.wisdom.orientdb.runtime;
+
+import org.apache.felix.ipojo.annotations.Component;
+import org.apache.felix.ipojo.annotations.Instantiate;
+import org.apache.felix.ipojo.annotations.Invalidate;
+import org.apache.felix.ipojo.annotations.Provides;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wisdom.orientdb.metrics.InMemoryOrientDbMetrics;
+import org.wisdom.orientdb.metrics.OrientDbMetricRegistry;
+import org.wisdom.orientdb.metrics.OrientDbMetrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This component provides the default {@link OrientDbMetrics} service. The metrics are kept in memory and the registry
+ * of each repository is exported as the <code>org.wisdom.orientdb:type=Metrics,alias=[alias]</code> MBean.
+ */
+@Component(name = OrientDbMetricsComp.COMPONENT_NAME)
+@Instantiate(name = OrientDbMetricsComp.INSTANCE_NAME)
+@Provides(specifications = OrientDbMetrics.class)
+class OrientDbMetricsComp extends InMemoryOrientDbMetrics {
+    static final String COMPONENT_NAME = "wisdom:orientdb:metrics:factory";
+    static final String INSTANCE_NAME = "wisdom:orientdb:metrics";
+
+    private final Logger logger = LoggerFactory.getLogger(OrientDbMetricsComp.class);
+
+    private final Collection<ObjectName> exported = new ConcurrentLinkedQueue<>();
+
+    @Override
+    protected OrientDbMetricRegistry createRegistry(String alias) {
+        OrientDbMetricRegistry registry = super.createRegistry(alias);
+
+        try {
+            ObjectName name = new ObjectName("org.wisdom.orientdb:type=Metrics,alias=" + ObjectName.quote(alias));
+            getServer().registerMBean(new OrientDbMetricsMBean(registry), name);
+            exported.add(name);
+        } catch (JMException e) {
+            logger.warn("Cannot export the metrics of the OrientDB repository {} through JMX.", alias, e);
+        }
+
+        return registry;
+    }
+
+    @Invalidate
+    private void stop() {
+        for (ObjectName name : exported) {
+            try {
+                getServer().unregisterMBean(name);
+            } catch (JMException e) {
+                logger.debug("Cannot unregister the MBean {}.", name, e);
+            }
+        }
+
+        exported.clear();
+    }
+
+    private static MBeanServer getServer() {
+        return ManagementFactory.getPlatformMBeanServer();
+    }
+}
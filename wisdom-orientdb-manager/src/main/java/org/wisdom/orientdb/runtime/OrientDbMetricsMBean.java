@@ -0,0 +1,109 @@
+package org.wisdom.orientdb.runtime;
+
+import org.wisdom.orientdb.metrics.OrientDbCounter;
+import org.wisdom.orientdb.metrics.OrientDbHistogram;
+import org.wisdom.orientdb.metrics.OrientDbMetricRegistry;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Read only MBean exposing the metrics of a repository. Each counter and gauge is an attribute, each histogram is
+ * exported as its count, mean, p50, p99 and max attributes (e.g <code>crud.Todo.save.p99</code>).
+ *
+ * The attributes are computed on each call since the metrics are created on first use.
+ */
+class OrientDbMetricsMBean implements DynamicMBean {
+    private final OrientDbMetricRegistry registry;
+
+    OrientDbMetricsMBean(OrientDbMetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Object value = snapshot().get(attribute);
+
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        return value;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("The metrics are read only.");
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Object> snapshot = snapshot();
+        AttributeList list = new AttributeList();
+
+        for (String attribute : attributes) {
+            if (snapshot.containsKey(attribute)) {
+                list.add(new Attribute(attribute, snapshot.get(attribute)));
+            }
+        }
+
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+
+        for (Map.Entry<String, Object> entry : snapshot().entrySet()) {
+            attributes.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+                    entry.getKey(), true, false, false));
+        }
+
+        return new MBeanInfo(getClass().getName(), "Metrics of the OrientDB repository " + registry.getAlias(),
+                attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, new MBeanOperationInfo[0], null);
+    }
+
+    private Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new TreeMap<>();
+
+        for (Map.Entry<String, OrientDbCounter> counter : registry.getCounters().entrySet()) {
+            snapshot.put(counter.getKey(), counter.getValue().getCount());
+        }
+
+        for (Map.Entry<String, LongSupplier> gauge : registry.getGauges().entrySet()) {
+            snapshot.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+
+        for (Map.Entry<String, OrientDbHistogram> entry : registry.getHistograms().entrySet()) {
+            OrientDbHistogram histogram = entry.getValue();
+            snapshot.put(entry.getKey() + ".count", histogram.getCount());
+            snapshot.put(entry.getKey() + ".mean", histogram.getMean());
+            snapshot.put(entry.getKey() + ".p50", histogram.getPercentile(50));
+            snapshot.put(entry.getKey() + ".p99", histogram.getPercentile(99));
+            snapshot.put(entry.getKey() + ".max", histogram.getMax());
+        }
+
+        return snapshot;
+    }
+}
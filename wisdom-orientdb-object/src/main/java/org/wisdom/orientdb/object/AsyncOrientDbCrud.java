@@ -0,0 +1,88 @@
+package org.wisdom.orientdb.object;
+
+import com.orientechnologies.orient.core.command.OCommandRequest;
+import com.orientechnologies.orient.core.query.OQuery;
+import org.wisdom.api.model.EntityFilter;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * The AsyncOrientDbCrud service runs the operations of an {@link OrientDbCrud} on the executor of its repository, so
+ * that the calling thread does not wait for the database. It is published along the {@link OrientDbCrud} of each
+ * entity class.
+ *
+ * The executor is bounded by {@link org.wisdom.orientdb.conf.WOrientConf#getAsyncThreads()} and
+ * {@link org.wisdom.orientdb.conf.WOrientConf#getAsyncQueueSize()}, a stage completes exceptionally with a
+ * {@link java.util.concurrent.RejectedExecutionException} if the queue is full.
+ *
+ * Each operation runs in its own connection, outside of the transaction of the calling thread. The connection is
+ * released once the operation is done, the entities returned are therefore detached and not proxied, with their lazy
+ * fields loaded.
+ *
+ * example:
+ *  <code>
+ *  asyncCrud.findOne(id).thenCombine(asyncCrud.count(), (entity, count) -> ...);
+ *  </code>
+ *
+ * @param <T> The type of the entity
+ * @param <I> The type of the id.
+ */
+public interface AsyncOrientDbCrud<T, I extends Serializable> {
+
+    /**
+     * @return The synchronous crud used to run the operations.
+     */
+    OrientDbCrud<T, I> getCrud();
+
+    CompletionStage<T> findOne(I id);
+
+    CompletionStage<T> findOne(EntityFilter<T> filter);
+
+    CompletionStage<Iterable<T>> findAll();
+
+    CompletionStage<Iterable<T>> findAll(Iterable<I> ids);
+
+    CompletionStage<Iterable<T>> findAll(EntityFilter<T> filter);
+
+    CompletionStage<Boolean> exists(I id);
+
+    CompletionStage<Long> count();
+
+    CompletionStage<T> save(T entity);
+
+    CompletionStage<Iterable<T>> save(Iterable<T> entities);
+
+    CompletionStage<T> delete(T entity);
+
+    CompletionStage<Void> delete(I id);
+
+    /**
+     * {@link OrientDbCrud#query(OQuery, Object...)}
+     */
+    CompletionStage<List<T>> query(OQuery<T> command, Object... args);
+
+    /**
+     * {@link OrientDbCrud#queryCached(OQuery, Object...)}
+     */
+    CompletionStage<List<T>> queryCached(OQuery<T> command, Object... args);
+
+    /**
+     * {@link OrientDbCrud#queryNamed(String, Object...)}
+     */
+    CompletionStage<List<T>> queryNamed(String name, Object... args);
+
+    /**
+     * {@link OrientDbCrud#execute(OCommandRequest, Object...)}
+     */
+    <RET> CompletionStage<RET> execute(OCommandRequest command, Object... args);
+
+    /**
+     * Run a transactional block on the executor, {@link OrientDbCrud#executeTransactionalBlock(Callable)}.
+     * The stage completes exceptionally with a {@link org.wisdom.api.model.HasBeenRollBackException} if the
+     * transaction has been rolled back.
+     */
+    <A> CompletionStage<A> executeTransactionalBlock(Callable<A> callable);
+}
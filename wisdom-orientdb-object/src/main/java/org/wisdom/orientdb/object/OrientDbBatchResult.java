@@ -0,0 +1,58 @@
+package org.wisdom.orientdb.object;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of the write of one chunk of entities by {@link OrientDbCrud#saveInBatch(Iterable)} or
+ * {@link OrientDbCrud#deleteInBatch(Iterable)}. Each chunk is written within its own transaction, it has either been
+ * fully committed or fully rolled back.
+ *
+ * @param <T> The type of the entity
+ */
+public final class OrientDbBatchResult<T> {
+    private final int index;
+    private final List<T> entities;
+    private final Exception failure;
+
+    public OrientDbBatchResult(int index, List<T> entities, Exception failure) {
+        this.index = index;
+        this.entities = Collections.unmodifiableList(entities);
+        this.failure = failure;
+    }
+
+    /**
+     * @return The index of the chunk, starting at 0.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return The saved (or deleted) entities of the chunk if it has been committed, the entities given for the chunk
+     * otherwise.
+     */
+    public List<T> getEntities() {
+        return entities;
+    }
+
+    /**
+     * @return The cause of the rollback of the chunk, <code>null</code> if the chunk has been committed.
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+    @Override
+    public String toString() {
+        return "OrientDbBatchResult{" +
+                "index=" + index +
+                ", size=" + entities.size() +
+                ", failure=" + failure +
+                '}';
+    }
+}
@@ -3,10 +3,14 @@ package org.wisdom.orientdb.object;
 
 import com.orientechnologies.orient.core.command.OCommandRequest;
 import com.orientechnologies.orient.core.query.OQuery;
+import org.reactivestreams.Publisher;
 import org.wisdom.api.model.Crud;
+import org.wisdom.api.model.EntityFilter;
+import org.wisdom.api.model.HasBeenRollBackException;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * The OrientDbCrud is a standard wisdom Crud service with some feature specific to Orientdb such as the possibility to
@@ -35,6 +39,40 @@ public interface OrientDbCrud<T,I extends Serializable> extends Crud<T,I>{
      */
     List<T> query(OQuery<T> command, Object ... args);
 
+    /**
+     * Same as {@link #query(OQuery, Object...)}, but the result is kept in the query cache of this crud, keyed by the
+     * normalized OSQL text, the arguments, the limit and the fetch plan of the query.
+     *
+     * The cached entities are detached and not proxied, they are shared by all the callers and must not be modified.
+     * The query cache of the entity class is cleared by each write through the OrientDbCrud services of the repository,
+     * the query should therefore only read this entity class. The cache is bypassed within a transaction, or if it is
+     * disabled. {@link org.wisdom.orientdb.conf.WOrientConf#getQueryCacheSize()}
+     *
+     * @param command The Sql query to run
+     * @param args The arguments
+     * @return The result of the request as an unmodifiable list of detached entities.
+     */
+    List<T> queryCached(OQuery<T> command, Object ... args);
+
+    /**
+     * Stream the result of an OSQL query, the query is run on the executor of the repository for each subscriber,
+     * with an {@link com.orientechnologies.orient.core.sql.query.OSQLAsynchQuery}, and the records are read as the
+     * subscriber requests them, so that a result of any size is streamed with a constant memory.
+     *
+     * The entities are detached and not proxied. The subscription holds a connection until the result has been
+     * entirely consumed or the subscription is cancelled.
+     *
+     * example:
+     *  <code>
+     *  crud.stream("select from Hello where name like ?", "G%").subscribe(subscriber);
+     *  </code>
+     *
+     * @param sql The Sql query to run
+     * @param args The arguments
+     * @return A publisher of the entities returned by the query.
+     */
+    Publisher<T> stream(String sql, Object ... args);
+
     /**
      * Execute an {@link OCommandRequest} passing the optional argument {@code args} and returns an Object.
      * {@link "http://orientdb.com/javadoc/latest/com/orientechnologies/orient/core/command/OCommandRequest.html"}
@@ -51,6 +89,114 @@ public interface OrientDbCrud<T,I extends Serializable> extends Crud<T,I>{
      */
     <RET> RET execute(OCommandRequest command, Object ... args);
 
+    /**
+     * Run a named query of the {@link OrientDbRepoCommand#getStatements()}, which has been parsed when the repository
+     * started.
+     *
+     * @param name The name of the statement.
+     * @param args The arguments of the query.
+     * @return The entities returned by the query.
+     * @throws IllegalArgumentException if there is no query with this name.
+     */
+    List<T> queryNamed(String name, Object ... args);
+
+    /**
+     * Run a named statement of the {@link OrientDbRepoCommand#getStatements()}, which has been parsed when the
+     * repository started.
+     *
+     * @param name The name of the statement.
+     * @param args The arguments of the statement.
+     * @return The result of the statement execution.
+     * @throws IllegalArgumentException if there is no statement with this name.
+     */
+    <RET> RET executeNamed(String name, Object ... args);
+
+    /**
+     * Save the given entities by chunks of the repository batch size, each chunk within its own transaction.
+     * If the repository is configured for massive insert, the {@link com.orientechnologies.orient.core.intent.OIntentMassiveInsert}
+     * intent is declared during the save.
+     *
+     * {@link org.wisdom.orientdb.conf.WOrientConf#getBatchSize()}
+     * @param entities The entities to save.
+     * @return The result of each chunk, a failed chunk does not prevent the next ones from being saved.
+     */
+    List<OrientDbBatchResult<T>> saveInBatch(Iterable<T> entities);
+
+    /**
+     * Save the given entities by chunks of <code>chunkSize</code> entities, each chunk within its own transaction.
+     * If called within a transactional block, the entities are saved within the running transaction and the first
+     * failure is thrown.
+     *
+     * @param entities The entities to save.
+     * @param chunkSize The number of entities committed at once.
+     * @param massiveInsert <code>true</code> in order to declare the massive insert intent during the save.
+     * @return The result of each chunk, a failed chunk does not prevent the next ones from being saved.
+     */
+    List<OrientDbBatchResult<T>> saveInBatch(Iterable<T> entities, int chunkSize, boolean massiveInsert);
+
+    /**
+     * Delete the given entities by chunks of the repository batch size, each chunk within its own transaction.
+     *
+     * @param entities The entities to delete.
+     * @return The result of each chunk, a failed chunk does not prevent the next ones from being deleted.
+     */
+    List<OrientDbBatchResult<T>> deleteInBatch(Iterable<T> entities);
+
+    /**
+     * Delete the given entities by chunks of <code>chunkSize</code> entities, each chunk within its own transaction.
+     *
+     * @param entities The entities to delete.
+     * @param chunkSize The number of entities committed at once.
+     * @return The result of each chunk, a failed chunk does not prevent the next ones from being deleted.
+     */
+    List<OrientDbBatchResult<T>> deleteInBatch(Iterable<T> entities, int chunkSize);
+
+    /**
+     * Open a cursor over all the entities of this crud, loaded lazily by pages of the repository default page size.
+     *
+     * {@link org.wisdom.orientdb.conf.WOrientConf#getPageSize()}
+     * @return A cursor over all the entities, it must be closed once done.
+     */
+    OrientDbCursor<T> cursor();
+
+    /**
+     * Open a cursor over all the entities of this crud, loaded lazily by pages of <code>pageSize</code> entities.
+     * Contrary to {@link #findAll()}, at most one page of entities is loaded in memory at once.
+     *
+     * @param pageSize The maximum number of entities loaded at once.
+     * @return A cursor over all the entities, it must be closed once done.
+     */
+    OrientDbCursor<T> cursor(int pageSize);
+
+    /**
+     * Open a cursor over the entities accepted by the given filter, loaded lazily by pages of <code>pageSize</code>
+     * entities.
+     *
+     * @param filter The filter, pushed down to OrientDB.
+     * @param pageSize The maximum number of entities loaded at once.
+     * @return A cursor over the entities accepted by the filter, it must be closed once done.
+     */
+    OrientDbCursor<T> cursor(OrientDbFilter<T> filter, int pageSize);
+
+    /**
+     * Retrieve a page of entities, seeking after the position given by the request token. Contrary to an OSQL
+     * <code>SKIP</code>, the cost of a page does not depend on its depth.
+     *
+     * @param request The page request.
+     * @return The requested page, with the token of the next page.
+     */
+    OrientDbPage<T> findPage(OrientDbPageRequest request);
+
+    /**
+     * Retrieve a page of the entities accepted by the given filter, seeking after the position given by the request
+     * token. The same filter must be used for all the pages.
+     *
+     * @param request The page request.
+     * @param filter The filter, pushed down to OrientDB.
+     * @return The requested page, with the token of the next page.
+     */
+    OrientDbPage<T> findPage(OrientDbPageRequest request, OrientDbFilter<T> filter);
+
     /**
      * Load the given entity from the db and return it.
      *
@@ -100,6 +246,54 @@ public interface OrientDbCrud<T,I extends Serializable> extends Crud<T,I>{
     T detach(T attachedEntity,Boolean returnNonProxyInstance);
 
 
+    /**
+     * Execute the given block within a transaction, according to the given propagation.
+     * {@link #executeTransactionalBlock(Runnable)} uses {@link OrientDbPropagation#REQUIRED}.
+     *
+     * @param propagation How to behave if a transaction is already running on the current thread.
+     * @param runnable The block to execute.
+     * @throws HasBeenRollBackException if the block failed and its transaction has been rolled back.
+     */
+    void executeTransactionalBlock(OrientDbPropagation propagation, Runnable runnable) throws HasBeenRollBackException;
+
+    /**
+     * Execute the given block within a transaction, according to the given propagation, and return its result.
+     * {@link #executeTransactionalBlock(Callable)} uses {@link OrientDbPropagation#REQUIRED}.
+     *
+     * @param propagation How to behave if a transaction is already running on the current thread.
+     * @param callable The block to execute.
+     * @param <A> The type of the result.
+     * @return The result of the block.
+     * @throws HasBeenRollBackException if the block failed and its transaction has been rolled back.
+     */
+    <A> A executeTransactionalBlock(OrientDbPropagation propagation, Callable<A> callable) throws HasBeenRollBackException;
+
+    /**
+     * Load the entities of the given ids with a single <code>select from [rid, ...]</code> query per
+     * {@link org.wisdom.orientdb.conf.WOrientConf#getBatchSize()} ids, and the records they link to according to the
+     * fetch plan. {@link #findAll(Iterable)} uses {@link org.wisdom.orientdb.conf.WOrientConf#getFetchPlan()}.
+     *
+     * example:
+     *  <code>
+     *  List<TodoList> lists = crud.findAll(ids, "todos:1");
+     *  </code>
+     *
+     * @param ids The ids of the entities to load.
+     * @param fetchPlan The OrientDB fetch plan, e.g <code>*:-1</code> to load all the linked records.
+     * @return The entities in the order of the ids, <code>null</code> for the ids of missing entities.
+     */
+    List<T> findAll(Iterable<I> ids, String fetchPlan);
+
+    /**
+     * Count the entities accepted by the filter. An {@link OrientDbFilter} is translated into an OSQL
+     * <code>select count(*)</code> query, which uses the class indexes, any other filter is tested against every
+     * entity of the class.
+     *
+     * @param filter The filter of the entities to count.
+     * @return The number of entities accepted by the filter.
+     */
+    long count(EntityFilter<T> filter);
+
     /**
      * @return This OrientDbCrud service associated repository,
      */
@@ -0,0 +1,36 @@
+package org.wisdom.orientdb.object;
+
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * A lazy iterator over the entities of an {@link OrientDbCrud}, loaded page by page.
+ *
+ * The cursor holds a database connection of the repository pool until it is exhausted or closed, it must therefore be
+ * closed once done, it supports try with resource. It must be consumed by the thread that created it.
+ *
+ * example:
+ *  <code>
+ *  try (OrientDbCursor<Todo> cursor = crud.cursor(500)) {
+ *      while (cursor.hasNext()) {
+ *          export(cursor.next());
+ *      }
+ *  }
+ *  </code>
+ *
+ * @param <T> The type of the entity
+ */
+public interface OrientDbCursor<T> extends Iterator<T>, AutoCloseable {
+
+    /**
+     * @return A sequential {@link Stream} over the remaining entities of this cursor, closing the stream closes the
+     * cursor.
+     */
+    Stream<T> stream();
+
+    /**
+     * Release the database connection held by this cursor. The cursor is automatically closed once exhausted.
+     */
+    @Override
+    void close();
+}
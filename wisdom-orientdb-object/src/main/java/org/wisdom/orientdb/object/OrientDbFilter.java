@@ -0,0 +1,436 @@
+package org.wisdom.orientdb.object;
+
+import org.wisdom.api.model.EntityFilter;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * An {@link EntityFilter} that can be analyzed and translated into an OSQL <code>WHERE</code> clause.
+ *
+ * When given to an {@link OrientDbCrud}, the filter is pushed down to OrientDB, and can therefore use the indexes of
+ * the entity class, instead of loading every entity of the class in order to call {@link #accept(Object)}.
+ *
+ * example:
+ *  <code>
+ *  Iterable<Todo> todos = crud.findAll(OrientDbFilter.<Todo>eq("done", false).and(OrientDbFilter.<Todo>like("content", "Get%")));
+ *  </code>
+ *
+ * The filter can still be evaluated in memory through {@link #accept(Object)}, the field values are then read through
+ * their getter (or the field itself if there is no getter).
+ *
+ * @param <T> The type of the entity
+ */
+public abstract class OrientDbFilter<T> implements EntityFilter<T> {
+
+    private static final Pattern FIELD_PATTERN = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*(\\.[A-Za-z_$][A-Za-z0-9_$]*)*");
+
+    /**
+     * Append the OSQL condition of this filter, using positional <code>?</code> parameters.
+     *
+     * @param params The list of positional parameters, the filter parameters are added to it in order.
+     * @return The OSQL condition of this filter (without the <code>WHERE</code> keyword).
+     */
+    public abstract String toWhereClause(List<Object> params);
+
+    /**
+     * @param other The other filter.
+     * @return A filter which accepts the entities accepted by both this filter and the <code>other</code> one.
+     */
+    public OrientDbFilter<T> and(OrientDbFilter<T> other) {
+        return and(this, other);
+    }
+
+    /**
+     * @param other The other filter.
+     * @return A filter which accepts the entities accepted by this filter or the <code>other</code> one.
+     */
+    public OrientDbFilter<T> or(OrientDbFilter<T> other) {
+        return or(this, other);
+    }
+
+    @Override
+    public String toString() {
+        return toWhereClause(new ArrayList<>());
+    }
+
+    //
+    // Factory methods
+    //
+
+    public static <T> OrientDbFilter<T> eq(String field, Object value) {
+        if (value == null) {
+            return isNull(field);
+        }
+        return new Comparison<>(field, Operator.EQ, value);
+    }
+
+    public static <T> OrientDbFilter<T> ne(String field, Object value) {
+        if (value == null) {
+            return isNotNull(field);
+        }
+        return new Comparison<>(field, Operator.NE, value);
+    }
+
+    public static <T> OrientDbFilter<T> lt(String field, Object value) {
+        return new Comparison<>(field, Operator.LT, value);
+    }
+
+    public static <T> OrientDbFilter<T> lte(String field, Object value) {
+        return new Comparison<>(field, Operator.LTE, value);
+    }
+
+    public static <T> OrientDbFilter<T> gt(String field, Object value) {
+        return new Comparison<>(field, Operator.GT, value);
+    }
+
+    public static <T> OrientDbFilter<T> gte(String field, Object value) {
+        return new Comparison<>(field, Operator.GTE, value);
+    }
+
+    /**
+     * @param field The field name.
+     * @param pattern A SQL like pattern, <code>%</code> matches any sequence of characters and <code>_</code> matches
+     *                a single character.
+     * @return A filter which accepts the entities whose field matches the pattern.
+     */
+    public static <T> OrientDbFilter<T> like(String field, String pattern) {
+        return new Comparison<>(field, Operator.LIKE, pattern);
+    }
+
+    /**
+     * @param field The field name.
+     * @param values The accepted values, a <code>null</code> value accepts the entities whose field is null.
+     * @return A filter which accepts the entities whose field is one of the values.
+     */
+    public static <T> OrientDbFilter<T> in(String field, Collection<?> values) {
+        List<Object> nonNull = new ArrayList<>(values.size());
+        boolean withNull = false;
+
+        for (Object value : values) {
+            if (value == null) {
+                withNull = true;
+            } else {
+                nonNull.add(value);
+            }
+        }
+
+        if (!withNull) {
+            return new In<>(field, nonNull);
+        }
+
+        //A null value never matches an OSQL in
+        return nonNull.isEmpty() ? OrientDbFilter.<T>isNull(field) : or(new In<T>(field, nonNull), isNull(field));
+    }
+
+    public static <T> OrientDbFilter<T> isNull(String field) {
+        return new NullCheck<>(field, true);
+    }
+
+    public static <T> OrientDbFilter<T> isNotNull(String field) {
+        return new NullCheck<>(field, false);
+    }
+
+    public static <T> OrientDbFilter<T> not(OrientDbFilter<T> filter) {
+        return new Not<>(filter);
+    }
+
+    @SafeVarargs
+    public static <T> OrientDbFilter<T> and(OrientDbFilter<T>... filters) {
+        return new Junction<>("and", Arrays.asList(filters));
+    }
+
+    @SafeVarargs
+    public static <T> OrientDbFilter<T> or(OrientDbFilter<T>... filters) {
+        return new Junction<>("or", Arrays.asList(filters));
+    }
+
+    //
+    // Filter implementations
+    //
+
+    private enum Operator {
+        EQ("="), NE("<>"), LT("<"), LTE("<="), GT(">"), GTE(">="), LIKE("like");
+
+        private final String sql;
+
+        Operator(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    private static final class Comparison<T> extends OrientDbFilter<T> {
+        private final String field;
+        private final Operator operator;
+        private final Object value;
+
+        private Comparison(String field, Operator operator, Object value) {
+            if (value == null) {
+                throw new NullPointerException("The value compared to " + field + " cannot be null.");
+            }
+            this.field = checkField(field);
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        public String toWhereClause(List<Object> params) {
+            params.add(toParameter(value));
+            return field + " " + operator.sql + " ?";
+        }
+
+        @Override
+        public boolean accept(T entity) {
+            Object actual = readProperty(entity, field);
+
+            if (actual == null) {
+                return false;
+            }
+
+            switch (operator) {
+                case EQ:
+                    return compare(actual, value) == 0;
+                case NE:
+                    return compare(actual, value) != 0;
+                case LT:
+                    return compare(actual, value) < 0;
+                case LTE:
+                    return compare(actual, value) <= 0;
+                case GT:
+                    return compare(actual, value) > 0;
+                case GTE:
+                    return compare(actual, value) >= 0;
+                case LIKE:
+                    return likeToRegex(value.toString()).matcher(actual.toString()).matches();
+                default:
+                    throw new IllegalStateException("Unknown operator " + operator);
+            }
+        }
+    }
+
+    private static final class In<T> extends OrientDbFilter<T> {
+        private final String field;
+        private final List<Object> values;
+
+        /**
+         * @param values The accepted values, without <code>null</code>.
+         */
+        private In(String field, Collection<?> values) {
+            this.field = checkField(field);
+            this.values = Collections.unmodifiableList(new ArrayList<Object>(values));
+        }
+
+        @Override
+        public String toWhereClause(List<Object> params) {
+            StringBuilder sql = new StringBuilder(field).append(" in [");
+            for (int i = 0; i < values.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+                params.add(toParameter(values.get(i)));
+            }
+            return sql.append(']').toString();
+        }
+
+        @Override
+        public boolean accept(T entity) {
+            Object actual = readProperty(entity, field);
+
+            if (actual == null) {
+                return false;
+            }
+
+            for (Object value : values) {
+                if (compare(actual, value) == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class NullCheck<T> extends OrientDbFilter<T> {
+        private final String field;
+        private final boolean isNull;
+
+        private NullCheck(String field, boolean isNull) {
+            this.field = checkField(field);
+            this.isNull = isNull;
+        }
+
+        @Override
+        public String toWhereClause(List<Object> params) {
+            return field + (isNull ? " is null" : " is not null");
+        }
+
+        @Override
+        public boolean accept(T entity) {
+            return (readProperty(entity, field) == null) == isNull;
+        }
+    }
+
+    private static final class Not<T> extends OrientDbFilter<T> {
+        private final OrientDbFilter<T> filter;
+
+        private Not(OrientDbFilter<T> filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        public String toWhereClause(List<Object> params) {
+            return "not (" + filter.toWhereClause(params) + ")";
+        }
+
+        @Override
+        public boolean accept(T entity) {
+            return !filter.accept(entity);
+        }
+    }
+
+    private static final class Junction<T> extends OrientDbFilter<T> {
+        private final String keyword;
+        private final List<OrientDbFilter<T>> filters;
+
+        private Junction(String keyword, List<OrientDbFilter<T>> filters) {
+            if (filters.isEmpty()) {
+                throw new IllegalArgumentException("At least one filter is required for a '" + keyword + "' filter.");
+            }
+            this.keyword = keyword;
+            this.filters = filters;
+        }
+
+        @Override
+        public String toWhereClause(List<Object> params) {
+            StringBuilder sql = new StringBuilder();
+            for (OrientDbFilter<T> filter : filters) {
+                if (sql.length() > 0) {
+                    sql.append(' ').append(keyword).append(' ');
+                }
+                sql.append('(').append(filter.toWhereClause(params)).append(')');
+            }
+            return sql.toString();
+        }
+
+        @Override
+        public boolean accept(T entity) {
+            boolean and = "and".equals(keyword);
+            for (OrientDbFilter<T> filter : filters) {
+                if (filter.accept(entity) != and) {
+                    return !and;
+                }
+            }
+            return and;
+        }
+    }
+
+    //
+    // Helper methods
+    //
+
+    private static String checkField(String field) {
+        if (field == null || !FIELD_PATTERN.matcher(field).matches()) {
+            throw new IllegalArgumentException("Invalid field name: " + field);
+        }
+        return field;
+    }
+
+    /**
+     * Enums are stored by name by the OrientDB object database.
+     */
+    private static Object toParameter(Object value) {
+        return value instanceof Enum ? ((Enum) value).name() : value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object actual, Object expected) {
+        if (actual instanceof Number && expected instanceof Number) {
+            return new BigDecimal(actual.toString()).compareTo(new BigDecimal(expected.toString()));
+        }
+
+        //The enums are compared by name, as OrientDB does once they are stored
+        if (actual instanceof Enum || expected instanceof Enum) {
+            return toParameter(actual).toString().compareTo(toParameter(expected).toString());
+        }
+
+        if (actual instanceof Comparable && actual.getClass().isInstance(expected)) {
+            return ((Comparable<Object>) actual).compareTo(expected);
+        }
+
+        return actual.equals(expected) ? 0 : actual.toString().compareTo(expected.toString());
+    }
+
+    private static Pattern likeToRegex(String like) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+
+        for (char c : like.toCharArray()) {
+            if (c == '%' || c == '_') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '%' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    /**
+     * Read the value of the given field path on the entity. The getter is used first since the entity might be a proxy
+     * whose fields are only populated through its getters.
+     */
+    private static Object readProperty(Object entity, String path) {
+        Object current = entity;
+
+        for (String name : path.split("\\.")) {
+            if (current == null) {
+                return null;
+            }
+            current = readField(current, name);
+        }
+
+        return current;
+    }
+
+    private static Object readField(Object target, String name) {
+        String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+
+        for (String getter : new String[]{"get" + suffix, "is" + suffix}) {
+            try {
+                Method method = target.getClass().getMethod(getter);
+                return method.invoke(target);
+            } catch (NoSuchMethodException e) {
+                //try next
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Cannot read " + name + " on " + target.getClass().getName(), e);
+            }
+        }
+
+        for (Class<?> clazz = target.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+            try {
+                Field field = clazz.getDeclaredField(name);
+                field.setAccessible(true);
+                return field.get(target);
+            } catch (NoSuchFieldException e) {
+                //try the super class
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot read " + name + " on " + target.getClass().getName(), e);
+            }
+        }
+
+        throw new IllegalArgumentException("No field " + name + " on " + target.getClass().getName());
+    }
+}
@@ -0,0 +1,38 @@
+package org.wisdom.orientdb.object;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of entities returned by {@link OrientDbCrud#findPage(OrientDbPageRequest)}.
+ *
+ * @param <T> The type of the entity
+ */
+public final class OrientDbPage<T> {
+    private final List<T> content;
+    private final String nextToken;
+
+    public OrientDbPage(List<T> content, String nextToken) {
+        this.content = Collections.unmodifiableList(content);
+        this.nextToken = nextToken;
+    }
+
+    /**
+     * @return The entities of this page.
+     */
+    public List<T> getContent() {
+        return content;
+    }
+
+    /**
+     * @return The opaque token used to request the next page with {@link OrientDbPageRequest#next(String, int)},
+     * <code>null</code> if this page is the last one.
+     */
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+}
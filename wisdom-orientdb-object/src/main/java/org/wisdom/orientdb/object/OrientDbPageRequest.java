@@ -0,0 +1,100 @@
+package org.wisdom.orientdb.object;
+
+/**
+ * A request for a page of entities, used by {@link OrientDbCrud#findPage(OrientDbPageRequest)}.
+ *
+ * Pages are retrieved by seeking after the last entity of the previous page (keyset pagination) instead of skipping
+ * the previous entities, a deep page therefore costs the same as the first one.
+ *
+ * example:
+ *  <code>
+ *  OrientDbPage<Todo> page = crud.findPage(OrientDbPageRequest.first(20, "date", false));
+ *  //...
+ *  OrientDbPage<Todo> next = crud.findPage(OrientDbPageRequest.next(page.getNextToken(), 20));
+ *  </code>
+ */
+public final class OrientDbPageRequest {
+    private final int size;
+    private final String sortField;
+    private final boolean ascending;
+    private final String token;
+
+    private OrientDbPageRequest(int size, String sortField, boolean ascending, String token) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The page size must be a positive integer.");
+        }
+        this.size = size;
+        this.sortField = sortField;
+        this.ascending = ascending;
+        this.token = token;
+    }
+
+    /**
+     * @param size The maximum number of entities of the page.
+     * @return A request for the first page of entities, ordered by RID.
+     */
+    public static OrientDbPageRequest first(int size) {
+        return new OrientDbPageRequest(size, null, true, null);
+    }
+
+    /**
+     * The sort field should be indexed and its values should not be null, entities with a <code>null</code> sort key
+     * are not part of the pages. Entities sharing the same key are returned in the RID order.
+     *
+     * @param size The maximum number of entities of the page.
+     * @param sortField The field used to sort the entities.
+     * @param ascending <code>true</code> for an ascending order, <code>false</code> for a descending order.
+     * @return A request for the first page of entities, ordered by the given field.
+     */
+    public static OrientDbPageRequest first(int size, String sortField, boolean ascending) {
+        if (sortField == null) {
+            throw new NullPointerException("The sort field cannot be null.");
+        }
+        return new OrientDbPageRequest(size, sortField, ascending, null);
+    }
+
+    /**
+     * @param token The token of the previous page, {@link OrientDbPage#getNextToken()}. It contains the sort order.
+     * @param size The maximum number of entities of the page.
+     * @return A request for the page following the one of the token.
+     */
+    public static OrientDbPageRequest next(String token, int size) {
+        if (token == null) {
+            throw new NullPointerException("The page token cannot be null.");
+        }
+        return new OrientDbPageRequest(size, null, true, token);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return The sort field of a first page request, <code>null</code> if the entities are ordered by RID or if the
+     * order is given by the token.
+     */
+    public String getSortField() {
+        return sortField;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    /**
+     * @return The token of the previous page, <code>null</code> for a first page request.
+     */
+    public String getToken() {
+        return token;
+    }
+
+    @Override
+    public String toString() {
+        return "OrientDbPageRequest{" +
+                "size=" + size +
+                ", sortField='" + sortField + '\'' +
+                ", ascending=" + ascending +
+                ", token='" + token + '\'' +
+                '}';
+    }
+}
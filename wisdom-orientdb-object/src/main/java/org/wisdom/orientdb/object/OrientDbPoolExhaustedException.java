@@ -0,0 +1,23 @@
+package org.wisdom.orientdb.object;
+
+/**
+ * Thrown when a connection cannot be acquired from the pool of a repository, because its <code>poolmax</code>
+ * connections are in use and either <code>poolmaxwaiters</code> threads are already waiting for one, or none has been
+ * released within <code>poolacquiretimeout</code>. The repository is overloaded, the request can be retried later, a
+ * controller would typically answer with <code>503 Service Unavailable</code>.
+ */
+public class OrientDbPoolExhaustedException extends RuntimeException {
+    private final String alias;
+
+    public OrientDbPoolExhaustedException(String alias, String message) {
+        super(message);
+        this.alias = alias;
+    }
+
+    /**
+     * @return The alias of the repository configuration.
+     */
+    public String getAlias() {
+        return alias;
+    }
+}
@@ -0,0 +1,33 @@
+package org.wisdom.orientdb.object;
+
+/**
+ * How a transactional block behaves when a transaction is already running on the current thread for the same
+ * {@link OrientDbRepository}.
+ *
+ * {@link OrientDbCrud#executeTransactionalBlock(OrientDbPropagation, java.util.concurrent.Callable)}
+ */
+public enum OrientDbPropagation {
+
+    /**
+     * Join the running transaction, or start a new one if there is none. The block is committed with the outer
+     * transaction, if it fails the outer transaction is marked as rollback only and will be rolled back instead of
+     * being committed.
+     */
+    REQUIRED,
+
+    /**
+     * Suspend the running transaction, if any, and start a new one on a dedicated connection. The block is committed
+     * or rolled back independently of the outer transaction. The dedicated connection is not taken from the pool, since
+     * the pool always returns the connection already used by the thread. At most <code>poolmax</code> dedicated
+     * connections are open at once, a block waits for one within <code>poolacquiretimeout</code>, after which it fails
+     * with an {@link OrientDbPoolExhaustedException}.
+     */
+    REQUIRES_NEW,
+
+    /**
+     * Join the running transaction as a savepoint, or start a new one if there is none. OrientDB does not support
+     * partial rollbacks, the savepoint is therefore emulated: if the block fails without having changed the
+     * transaction, the outer transaction can still be committed, otherwise it is marked as rollback only.
+     */
+    NESTED
+}
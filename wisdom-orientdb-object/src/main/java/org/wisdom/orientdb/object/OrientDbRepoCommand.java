@@ -3,7 +3,10 @@ package org.wisdom.orientdb.object;
 import com.orientechnologies.orient.object.db.OObjectDatabaseTx;
 import org.wisdom.orientdb.conf.WOrientConf;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The OrientDbRepoCommand service will be used as incentive to provides a new {@link OrientDbRepository} and {@link org.wisdom.orientdb.object.OrientDbCrud} services
@@ -12,6 +15,9 @@ import java.util.List;
  * If the OrientDbRepoCommand configuration is valid, a {@link org.wisdom.orientdb.object.OrientDbCrud} service will be published for each entity present in the
  * {@link #getEntityClass()} list.
  *
+ * When the entity classes change, the service properties of the OrientDbRepoCommand must be modified, so that only the
+ * OrientDbCrud services of the added and removed classes are re-registered, the repository and its pool being kept.
+ *
  * In addition to
  */
 public interface OrientDbRepoCommand {
@@ -38,4 +44,36 @@ public interface OrientDbRepoCommand {
      * @param db The database instance that contains the entities.
      */
     void destroy(OObjectDatabaseTx db);
+
+    /**
+     * A hook that will be call when the service properties of this OrientDbRepoCommand have been modified and its
+     * {@link #getEntityClass()} have changed, after the de-registration of the OrientDbCrud services of the removed
+     * classes and before the registration of those of the added classes. A class loaded again by an updated bundle is
+     * both removed and added.
+     *
+     * The removed classes are deregistered from the entity manager and the added classes registered by default.
+     *
+     * @param db The database instance that contains the entities.
+     * @param added The entity classes which have been added.
+     * @param removed The entity classes which have been removed.
+     */
+    default void update(OObjectDatabaseTx db, Collection<Class<?>> added, Collection<Class<?>> removed) {
+        for (Class<?> entity : removed) {
+            db.getEntityManager().deregisterEntityClass(entity);
+        }
+
+        for (Class<?> entity : added) {
+            db.getEntityManager().registerEntityClass(entity);
+        }
+    }
+
+    /**
+     * The named OSQL statements of the repository, parsed once after {@link #init(OObjectDatabaseTx)} and run with
+     * {@link OrientDbCrud#queryNamed(String, Object...)} and {@link OrientDbCrud#executeNamed(String, Object...)}.
+     *
+     * @return The statements by name, none by default.
+     */
+    default Map<String, String> getStatements() {
+        return Collections.emptyMap();
+    }
 }
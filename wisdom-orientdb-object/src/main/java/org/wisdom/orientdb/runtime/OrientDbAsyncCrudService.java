@@ -0,0 +1,177 @@
+package org.wisdom.orientdb.runtime;
+
+import com.orientechnologies.orient.core.command.OCommandRequest;
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.query.OQuery;
+import org.wisdom.api.model.EntityFilter;
+import org.wisdom.orientdb.object.AsyncOrientDbCrud;
+import org.wisdom.orientdb.object.OrientDbCrud;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Implementation of the AsyncOrientDbCrud, which runs the operations of an {@link OrientDbCrudService} on the
+ * executor of its repository.
+ *
+ * The connection acquired by an operation is bound to the executor thread only for the duration of the operation,
+ * the thread is unbound from the database once it is done, so that the next task does not see a released connection.
+ * The entities returned are therefore detached within the operation, with their lazy fields loaded, and not proxied.
+ */
+class OrientDbAsyncCrudService<T> implements AsyncOrientDbCrud<T, String> {
+    private final OrientDbCrud<T, String> crud;
+    private final OrientDbTransactionManager txManager;
+    private final Executor executor;
+
+    /**
+     * @param crud The crud running the operations.
+     * @param txManager The transaction manager of the crud repository, used to keep the connection of an operation
+     * bound until its result has been detached.
+     * @param executor The executor running the operations.
+     */
+    OrientDbAsyncCrudService(OrientDbCrud<T, String> crud, OrientDbTransactionManager txManager, Executor executor) {
+        this.crud = crud;
+        this.txManager = txManager;
+        this.executor = executor;
+    }
+
+    @Override
+    public OrientDbCrud<T, String> getCrud() {
+        return crud;
+    }
+
+    @Override
+    public CompletionStage<T> findOne(final String id) {
+        return submit(() -> detach(crud.findOne(id)));
+    }
+
+    @Override
+    public CompletionStage<T> findOne(final EntityFilter<T> filter) {
+        return submit(() -> detach(crud.findOne(filter)));
+    }
+
+    @Override
+    public CompletionStage<Iterable<T>> findAll() {
+        return submit(() -> detachAll(crud.findAll()));
+    }
+
+    @Override
+    public CompletionStage<Iterable<T>> findAll(final Iterable<String> ids) {
+        return submit(() -> detachAll(crud.findAll(ids)));
+    }
+
+    @Override
+    public CompletionStage<Iterable<T>> findAll(final EntityFilter<T> filter) {
+        return submit(() -> detachAll(crud.findAll(filter)));
+    }
+
+    @Override
+    public CompletionStage<Boolean> exists(final String id) {
+        return submit(() -> crud.exists(id));
+    }
+
+    @Override
+    public CompletionStage<Long> count() {
+        return submit(crud::count);
+    }
+
+    @Override
+    public CompletionStage<T> save(final T entity) {
+        return submit(() -> detach(crud.save(entity)));
+    }
+
+    @Override
+    public CompletionStage<Iterable<T>> save(final Iterable<T> entities) {
+        return submit(() -> detachAll(crud.save(entities)));
+    }
+
+    @Override
+    public CompletionStage<T> delete(final T entity) {
+        return submit(() -> crud.delete(entity));
+    }
+
+    @Override
+    public CompletionStage<Void> delete(final String id) {
+        return submit(() -> {
+            crud.delete(id);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletionStage<List<T>> query(final OQuery<T> command, final Object... args) {
+        return submit(() -> detachAll(crud.query(command, args)));
+    }
+
+    @Override
+    public CompletionStage<List<T>> queryCached(final OQuery<T> command, final Object... args) {
+        return submit(() -> crud.queryCached(command, args));
+    }
+
+    @Override
+    public CompletionStage<List<T>> queryNamed(final String name, final Object... args) {
+        return submit(() -> detachAll(crud.queryNamed(name, args)));
+    }
+
+    @Override
+    public <RET> CompletionStage<RET> execute(final OCommandRequest command, final Object... args) {
+        return submit(() -> crud.<RET>execute(command, args));
+    }
+
+    @Override
+    public <A> CompletionStage<A> executeTransactionalBlock(final Callable<A> callable) {
+        return submit(() -> crud.executeTransactionalBlock(callable));
+    }
+
+    /**
+     * @return The given entity detached, <code>null</code> if it is <code>null</code>.
+     */
+    private T detach(T entity) {
+        return entity == null ? null : crud.detach(entity, true);
+    }
+
+    private List<T> detachAll(Iterable<T> entities) {
+        List<T> detached = new ArrayList<>();
+        for (T entity : entities) {
+            detached.add(crud.detach(entity, true));
+        }
+        return detached;
+    }
+
+    /**
+     * Run the operation on the executor, the connection it acquires is kept bound to the executor thread until the
+     * operation is done.
+     *
+     * @return A stage completed with the result of the operation, or exceptionally with its failure or with the
+     * {@link RejectedExecutionException} of the executor.
+     */
+    private <R> CompletionStage<R> submit(final Callable<R> operation) {
+        final CompletableFuture<R> result = new CompletableFuture<>();
+
+        try {
+            executor.execute(() -> {
+                try {
+                    txManager.acquireDb();
+                    try {
+                        result.complete(operation.call());
+                    } finally {
+                        txManager.releaseDb();
+                    }
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    ODatabaseRecordThreadLocal.INSTANCE.remove();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+
+        return result;
+    }
+}
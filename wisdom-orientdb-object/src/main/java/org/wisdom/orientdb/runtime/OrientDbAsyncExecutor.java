@@ -0,0 +1,186 @@
+package org.wisdom.orientdb.runtime;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wisdom.orientdb.conf.WOrientConf;
+import org.wisdom.orientdb.metrics.OrientDbMetricRegistry;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executor of the AsyncOrientDbCrud services of a repository, created according to
+ * {@link WOrientConf#getAsyncMode()}.
+ */
+abstract class OrientDbAsyncExecutor implements Executor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrientDbAsyncExecutor.class);
+
+    /**
+     * @param conf The repository configuration.
+     * @param metrics The repository metrics, in which the executor registers its gauges.
+     * @return A new executor, {@link Pooled} if the virtual threads are not available.
+     */
+    static OrientDbAsyncExecutor create(WOrientConf conf, OrientDbMetricRegistry metrics) {
+        String prefix = "orientdb-" + conf.getAlias() + "-async-";
+
+        if (conf.getAsyncMode() == WOrientConf.AsyncMode.VIRTUAL) {
+            ThreadFactory factory = virtualThreadFactory(prefix);
+
+            if (factory != null) {
+                return new Virtual(conf, factory, metrics);
+            }
+
+            LOGGER.warn("The virtual threads are not available in this Java runtime, the asynchronous operations of " +
+                    "{} run on a pool of {} threads.", conf.getAlias(), conf.getAsyncThreads());
+        }
+
+        return new Pooled(conf, prefix, metrics);
+    }
+
+    /**
+     * Stop accepting new operations, the accepted ones still run.
+     */
+    abstract void shutdown();
+
+    /**
+     * @return The mode of the executor, {@link WOrientConf.AsyncMode#POOLED} if the virtual threads are not available.
+     */
+    abstract WOrientConf.AsyncMode getMode();
+
+    /**
+     * @return A factory of named virtual threads, <code>null</code> if the Java runtime does not support them.
+     */
+    private static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            //Thread.ofVirtual().name(prefix, 1).factory(), this module is compiled for Java 8
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Object virtual = Thread.class.getMethod("ofVirtual").invoke(null);
+            virtual = builder.getMethod("name", String.class, long.class).invoke(virtual, prefix, 1L);
+            return (ThreadFactory) builder.getMethod("factory").invoke(virtual);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.debug("Cannot create a virtual thread factory.", e);
+            return null;
+        }
+    }
+
+    /**
+     * A bounded pool of platform threads, which stop when idle.
+     */
+    private static final class Pooled extends OrientDbAsyncExecutor {
+        private final ThreadPoolExecutor executor;
+
+        private Pooled(WOrientConf conf, final String prefix, OrientDbMetricRegistry metrics) {
+            final AtomicInteger count = new AtomicInteger();
+            executor = new ThreadPoolExecutor(conf.getAsyncThreads(), conf.getAsyncThreads(), 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(conf.getAsyncQueueSize()),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+
+            metrics.gauge("async.active", executor::getActiveCount);
+            metrics.gauge("async.queue", () -> executor.getQueue().size());
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            executor.execute(command);
+        }
+
+        @Override
+        void shutdown() {
+            executor.shutdown();
+        }
+
+        @Override
+        WOrientConf.AsyncMode getMode() {
+            return WOrientConf.AsyncMode.POOLED;
+        }
+    }
+
+    /**
+     * A virtual thread per operation.
+     *
+     * The OrientDB pools wait for a free connection while holding a monitor, which would pin the carrier threads. The
+     * operations running at once are therefore bounded by <code>poolmax</code> permits, the other virtual threads wait
+     * for a permit, without holding a carrier thread. The ODatabaseRecordThreadLocal binding belongs to the virtual
+     * thread, it is kept when the virtual thread moves to another carrier thread.
+     */
+    private static final class Virtual extends OrientDbAsyncExecutor {
+        private final ThreadFactory factory;
+
+        /**
+         * The operations accepted and not done yet.
+         */
+        private final Semaphore accepted;
+
+        /**
+         * The operations allowed to use a connection.
+         */
+        private final Semaphore connections;
+
+        private final int maxAccepted;
+        private final int maxConnections;
+
+        private volatile boolean shutdown = false;
+
+        private Virtual(WOrientConf conf, ThreadFactory factory, OrientDbMetricRegistry metrics) {
+            this.factory = factory;
+            this.maxAccepted = conf.getAsyncQueueSize();
+            this.maxConnections = conf.getPoolMax();
+            this.accepted = new Semaphore(maxAccepted);
+            this.connections = new Semaphore(maxConnections, true);
+
+            metrics.gauge("async.active", () -> maxConnections - connections.availablePermits());
+            metrics.gauge("async.queue", connections::getQueueLength);
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            if (shutdown) {
+                throw new RejectedExecutionException("The executor has been shut down.");
+            }
+
+            if (!accepted.tryAcquire()) {
+                throw new RejectedExecutionException("Too many asynchronous operations, the limit is " + maxAccepted +
+                        ".");
+            }
+
+            try {
+                factory.newThread(() -> {
+                    try {
+                        connections.acquireUninterruptibly();
+                        try {
+                            command.run();
+                        } finally {
+                            connections.release();
+                        }
+                    } finally {
+                        accepted.release();
+                    }
+                }).start();
+            } catch (RuntimeException | Error e) {
+                accepted.release();
+                throw new RejectedExecutionException("Cannot start a virtual thread.", e);
+            }
+        }
+
+        @Override
+        void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        WOrientConf.AsyncMode getMode() {
+            return WOrientConf.AsyncMode.VIRTUAL;
+        }
+    }
+}
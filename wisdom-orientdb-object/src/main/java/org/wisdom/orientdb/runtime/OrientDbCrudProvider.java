@@ -23,11 +23,8 @@ import org.wisdom.orientdb.manager.OrientDbManager;
 import org.wisdom.orientdb.object.OrientDbRepoCommand;
 
 import java.io.IOException;
-import java.net.URL;
 import java.util.*;
 
-import static java.io.File.separator;
-
 /**
  * created: 5/13/14.
  *
@@ -36,7 +33,7 @@ import static java.io.File.separator;
  */
 @Component(name = OrientDbCrudProvider.COMPONENT_NAME)
 @Instantiate(name = OrientDbCrudProvider.INSTANCE_NAME)
-class OrientDbCrudProvider implements BundleTrackerCustomizer<Collection<ServiceRegistration>> {
+class OrientDbCrudProvider implements BundleTrackerCustomizer<Map<String, List<Class<?>>>> {
     static final String COMPONENT_NAME = "wisdom:orientdb:crudservice:factory";
     static final String INSTANCE_NAME = "wisdom:orientdb:crudservice:provider";
 
@@ -70,10 +67,24 @@ class OrientDbCrudProvider implements BundleTrackerCustomizer<Collection<Service
 
     private final BundleContext context;
 
-    private BundleTracker<Collection<ServiceRegistration>> bundleTracker;
+    private BundleTracker<Map<String, List<Class<?>>>> bundleTracker;
 
     private Collection<WOrientConf> confs;
 
+    /**
+     * The OrientDbRepoCommand of each configuration alias, shared by the bundles which contain its entities, and their
+     * registrations. A command is registered with its first entity and kept until this provider stops, so that the
+     * repository and its pool survive the update of the bundles.
+     */
+    private final Map<String, OrientDbRepoCommandImpl> commands = new HashMap<>();
+
+    private final Map<String, ServiceRegistration<OrientDbRepoCommand>> registrations = new HashMap<>();
+
+    /**
+     * Find the entity classes of the bundles, the results are kept in the data area of this bundle.
+     */
+    private OrientDbEntityScanner scanner;
+
     public OrientDbCrudProvider(BundleContext bundleContext) {
         context = bundleContext;
     }
@@ -88,6 +99,7 @@ class OrientDbCrudProvider implements BundleTrackerCustomizer<Collection<Service
 
         //OrientDb database has been set up from the configuration file.
         if(!confs.isEmpty()){
+            scanner = new OrientDbEntityScanner(context.getDataFile("entities.properties"));
             bundleTracker = new BundleTracker<>(context, Bundle.ACTIVE, this);
             bundleTracker.open();
         }
@@ -95,6 +107,17 @@ class OrientDbCrudProvider implements BundleTrackerCustomizer<Collection<Service
 
     @Invalidate
     private void stop(){
+        synchronized (this){
+            for(ServiceRegistration<OrientDbRepoCommand> reg: registrations.values()){
+                reg.unregister();
+            }
+            registrations.clear();
+            commands.clear();
+
+            //The bundles removed by the tracker no longer change any command
+            confs = Collections.emptyList();
+        }
+
         if(bundleTracker != null){
             bundleTracker.close();
         }
@@ -104,30 +127,54 @@ class OrientDbCrudProvider implements BundleTrackerCustomizer<Collection<Service
 
 
     @Override
-    public Collection<ServiceRegistration> addingBundle(Bundle bundle, BundleEvent bundleEvent) {
-        Collection<ServiceRegistration> registrations = new HashSet<>();
+    public Map<String, List<Class<?>>> addingBundle(Bundle bundle, BundleEvent bundleEvent) {
+        Map<String, List<Class<?>>> entities = findEntities(bundle);
+        publish(bundle, entities);
+        return entities;
+    }
+
+    @Override
+    public void modifiedBundle(Bundle bundle, BundleEvent bundleEvent, Map<String, List<Class<?>>> entities) {
+        //Only the entity classes which have been added, removed or loaded again are re-registered
+        Map<String, List<Class<?>>> current = findEntities(bundle);
+        publish(bundle, current);
+        entities.clear();
+        entities.putAll(current);
+    }
+
+    @Override
+    public void removedBundle(Bundle bundle, BundleEvent bundleEvent, Map<String, List<Class<?>>> entities) {
+        publish(bundle, Collections.<String, List<Class<?>>>emptyMap());
+        entities.clear();
+    }
+
+    /**
+     * @param bundle The bundle to scan.
+     * @return The entity classes of the bundle by configuration alias.
+     */
+    private Map<String, List<Class<?>>> findEntities(Bundle bundle) {
+        Map<String, List<Class<?>>> found = new HashMap<>();
 
         for(WOrientConf conf: confs){
 
             List<Class<?>> entities = new ArrayList<>();
 
             for(String ns : conf.getNameSpace()) {
-                Enumeration<URL> enums = bundle.findEntries(packageNameToPath(ns), "*.class", true);
-                if(enums == null || !enums.hasMoreElements()){
+                //Only the classes annotated with @Entity are loaded
+                List<String> names = scanner.findEntities(bundle, ns);
+                if(names.isEmpty()){
                     continue;
                 }
-                logger.info("OrientDB Database configuration found for {} : {}",
-                        packageNameToPath(ns), conf.toString());
+                logger.info("OrientDB Database configuration found for {} : {}", ns, conf.toString());
 
                 //Load the entities from the bundle
-                do{
-                    URL entry = enums.nextElement();
+                for(String name : names){
                     try {
-                        entities.add(bundle.loadClass(urlToClassName(entry)));
+                        entities.add(bundle.loadClass(name));
                     } catch (ClassNotFoundException e) {
-                        logger.error("Cannot load entity class {}",entry,e);
+                        logger.error("Cannot load entity class {}",name,e);
                     }
-                }while (enums.hasMoreElements());
+                }
             }
 
             if(entities.isEmpty()){
@@ -136,76 +183,92 @@ class OrientDbCrudProvider implements BundleTrackerCustomizer<Collection<Service
                 continue;
             }
 
-            //Create and register a new OrientDbRepoCommand for the given entities and db configuration
-            OrientDbRepoCommand repoWB = new OrientDbRepoCommandImpl(entities,conf);
-            registrations.add(context.registerService(OrientDbRepoCommand.class, repoWB, new Hashtable<String, Object>()));
-            logger.debug("The command for OrientDb database {} has been published.",conf.getAlias());
+            found.put(conf.getAlias(), entities);
         }
 
-        return registrations;
+        scanner.save();
+        return found;
     }
 
-    @Override
-    public void modifiedBundle(Bundle bundle, BundleEvent bundleEvent, Collection<ServiceRegistration> registrations) {
-        //TODO very dummy fix that
-        //removedBundle(bundle,bundleEvent,repositories);
-        //addingBundle(bundle,bundleEvent);
-    }
+    /**
+     * Set the entity classes of a bundle in the OrientDbRepoCommand of each configuration. A new command is registered
+     * for the first entities of a configuration, the registration of an existing command is modified if its entities
+     * have changed, in order to only re-register their Crud services.
+     *
+     * @param bundle The bundle which contains the entities.
+     * @param entities The entity classes of the bundle by configuration alias.
+     */
+    private synchronized void publish(Bundle bundle, Map<String, List<Class<?>>> entities) {
+        for(WOrientConf conf: confs){
+            List<Class<?>> classes = entities.get(conf.getAlias());
+            OrientDbRepoCommandImpl command = commands.get(conf.getAlias());
 
-    @Override
-    public void removedBundle(Bundle bundle, BundleEvent bundleEvent, Collection<ServiceRegistration> registrations) {
-        for(ServiceRegistration sreg: registrations){
-            sreg.unregister();
+            if(command == null){
+                if(classes == null){
+                    continue;
+                }
+
+                //Create and register a new OrientDbRepoCommand for the given entities and db configuration
+                command = new OrientDbRepoCommandImpl(conf);
+                command.setEntities(bundle.getBundleId(), classes);
+                commands.put(conf.getAlias(), command);
+                registrations.put(conf.getAlias(),
+                        context.registerService(OrientDbRepoCommand.class, command, new Hashtable<String, Object>()));
+                logger.debug("The command for OrientDb database {} has been published.",conf.getAlias());
+            } else if(command.setEntities(bundle.getBundleId(),
+                    classes == null ? Collections.<Class<?>>emptyList() : classes)){
+                registrations.get(conf.getAlias()).setProperties(new Hashtable<String, Object>());
+                logger.debug("The command for OrientDb database {} has been modified.",conf.getAlias());
+            }
         }
-        registrations.clear();
     }
 
     /**
      * Simple OrientDbRepoCommand which register the Entity class in the database entity manager upon initialisation and
-     * remove them upon destroy.
+     * remove them upon destroy. The entity classes are kept by bundle.
      */
     static class OrientDbRepoCommandImpl implements OrientDbRepoCommand {
 
         private final WOrientConf conf;
 
-        private final List<Class<?>> entities;
+        private final Map<Long, List<Class<?>>> entities = new LinkedHashMap<>();
 
-        public OrientDbRepoCommandImpl(List<Class<?>> entities, WOrientConf conf) {
-            this.entities =entities;
+        public OrientDbRepoCommandImpl(WOrientConf conf) {
             this.conf = conf;
         }
 
+        /**
+         * @param bundleId The id of the bundle which contains the entities.
+         * @param classes The entity classes of the bundle, empty if it has none.
+         * @return <code>true</code> if the entity classes of the bundle have changed.
+         */
+        synchronized boolean setEntities(long bundleId, List<Class<?>> classes) {
+            List<Class<?>> previous = classes.isEmpty() ? entities.remove(bundleId) : entities.put(bundleId, classes);
+            return !(previous == null ? Collections.<Class<?>>emptyList() : previous).equals(classes);
+        }
+
         public WOrientConf getConf() {
             return conf;
         }
 
-        public List<Class<?>> getEntityClass() {
-            return entities;
+        public synchronized List<Class<?>> getEntityClass() {
+            List<Class<?>> all = new ArrayList<>();
+            for(List<Class<?>> classes: entities.values()){
+                all.addAll(classes);
+            }
+            return all;
         }
 
         public void init(OObjectDatabaseTx db) {
-            for(Class entity: entities){
+            for(Class entity: getEntityClass()){
                 db.getEntityManager().registerEntityClass(entity);
             }
         }
 
         public void destroy(OObjectDatabaseTx db) {
-            for(Class entity: entities){
+            for(Class entity: getEntityClass()){
                 db.getEntityManager().deregisterEntityClass(entity);
             }
         }
     }
-
-    //
-    // Helper methods
-    //
-
-    private static String urlToClassName(URL url){
-        String path = url.getPath();
-        return path.replace(separator,".").substring(1,path.lastIndexOf("."));
-    }
-
-    private static String packageNameToPath(String packageName){
-        return separator + packageName.replace(".",separator);
-    }
 }
@@ -1,19 +1,47 @@
 package org.wisdom.orientdb.runtime;
 
 import com.orientechnologies.orient.core.command.OCommandRequest;
+import com.orientechnologies.orient.core.command.OCommandRequestText;
+import com.orientechnologies.orient.core.exception.OConcurrentModificationException;
+import com.orientechnologies.orient.core.id.ORID;
 import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.intent.OIntentMassiveInsert;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.OCommandSQL;
 import com.orientechnologies.orient.core.query.OQuery;
+import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
 import com.orientechnologies.orient.object.db.OObjectDatabaseTx;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.wisdom.api.model.EntityFilter;
 import org.wisdom.api.model.FluentTransaction;
 import org.wisdom.api.model.HasBeenRollBackException;
 import org.wisdom.api.model.TransactionManager;
+import org.wisdom.orientdb.metrics.OrientDbCounter;
+import org.wisdom.orientdb.metrics.OrientDbHistogram;
+import org.wisdom.orientdb.metrics.OrientDbMetricRegistry;
+import org.wisdom.orientdb.object.OrientDbBatchResult;
 import org.wisdom.orientdb.object.OrientDbCrud;
+import org.wisdom.orientdb.object.OrientDbCursor;
+import org.wisdom.orientdb.object.OrientDbFilter;
+import org.wisdom.orientdb.object.OrientDbPage;
+import org.wisdom.orientdb.object.OrientDbPageRequest;
+import org.wisdom.orientdb.object.OrientDbPropagation;
 import org.wisdom.orientdb.object.OrientDbRepository;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * CRUD Service Implementation using Orientdb ODatabaseObject.
@@ -25,20 +53,116 @@ import java.util.concurrent.Callable;
 class OrientDbCrudService<T> implements OrientDbCrud<T, String> {
     private final OrientDbTransactionManager txManager;
 
-    private final OrientDbRepository repo;
+    private final OrientDbRepositoryImpl repo;
 
     private final Class<T> entityClass;
 
+    /**
+     * Number of {@link EntityFilter} which could not be pushed down to OrientDB and required a full class scan.
+     */
+    private final AtomicLong fallbackScans = new AtomicLong();
+
+    /**
+     * The {@link EntityFilter} classes for which a full class scan has already been reported.
+     */
+    private final Set<Class<?>> reportedFilters = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Latency histograms of the operations on this entity class, registered as <code>crud.[entity].[operation]</code>
+     * in the repository metrics, and number of entities browsed by the filters which could not be pushed down.
+     */
+    private final OrientDbHistogram saveLatency;
+    private final OrientDbHistogram deleteLatency;
+    private final OrientDbHistogram findLatency;
+    private final OrientDbHistogram queryLatency;
+    private final OrientDbHistogram countLatency;
+    private final OrientDbHistogram txLatency;
+    private final OrientDbCounter fallbackScanned;
+
+    /**
+     * Number of outermost transactional blocks rolled back because of a concurrent modification, and number of
+     * retries, registered as <code>crud.[entity].transaction.conflict</code> and <code>transaction.retry</code>.
+     */
+    private final OrientDbCounter conflicts;
+    private final OrientDbCounter retries;
+
+    /**
+     * Second level cache of the records of this entity class, <code>null</code> if it is disabled.
+     * {@link org.wisdom.orientdb.conf.WOrientConf#getCacheSize()}
+     */
+    private final OrientDbEntityCache<ODocument> cache;
+    private final OrientDbCounter cacheHits;
+    private final OrientDbCounter cacheMisses;
+
+    /**
+     * Cache of the results of {@link #queryCached(OQuery, Object...)}, <code>null</code> if it is disabled.
+     * {@link org.wisdom.orientdb.conf.WOrientConf#getQueryCacheSize()}
+     */
+    private final OrientDbEntityCache<List<T>> queryCache;
+    private final OrientDbCounter queryCacheHits;
+    private final OrientDbCounter queryCacheMisses;
+
+    /**
+     * Cache of the result of {@link #count()}, <code>null</code> if it is disabled.
+     * {@link org.wisdom.orientdb.conf.WOrientConf#getCountCacheTtl()}
+     */
+    private final OrientDbEntityCache<Long> countCache;
+    private static final String COUNT_KEY = "count";
+    private final OrientDbCounter countCacheHits;
+
+    private final Logger logger = LoggerFactory.getLogger(OrientDbCrudService.class);
 
     OrientDbCrudService(OrientDbRepositoryImpl repo, Class<T> entityClass) {
         this.repo = repo;
-        this.txManager = new OrientDbTransactionManager(repo);
+        this.txManager = repo.getTransactionManager();
         this.entityClass = entityClass;
+
+        OrientDbMetricRegistry metrics = repo.getMetrics();
+        String prefix = "crud." + entityClass.getSimpleName() + ".";
+        this.saveLatency = metrics.histogram(prefix + "save");
+        this.deleteLatency = metrics.histogram(prefix + "delete");
+        this.findLatency = metrics.histogram(prefix + "find");
+        this.queryLatency = metrics.histogram(prefix + "query");
+        this.countLatency = metrics.histogram(prefix + "count");
+        this.txLatency = metrics.histogram(prefix + "transaction");
+        this.fallbackScanned = metrics.counter(prefix + "fallback.scanned");
+        this.conflicts = metrics.counter(prefix + "transaction.conflict");
+        this.retries = metrics.counter(prefix + "transaction.retry");
+        this.cacheHits = metrics.counter(prefix + "cache.hit");
+        this.cacheMisses = metrics.counter(prefix + "cache.miss");
+
+        if (repo.getConf().getCacheSize() > 0) {
+            this.cache = new OrientDbEntityCache<>(repo.getConf().getCacheSize(), repo.getConf().getCacheTtl(),
+                    metrics.counter(prefix + "cache.eviction"));
+            metrics.gauge(prefix + "cache.size", cache::size);
+        } else {
+            this.cache = null;
+        }
+
+        this.queryCacheHits = metrics.counter(prefix + "querycache.hit");
+        this.queryCacheMisses = metrics.counter(prefix + "querycache.miss");
+
+        if (repo.getConf().getQueryCacheSize() > 0) {
+            this.queryCache = new OrientDbEntityCache<>(repo.getConf().getQueryCacheSize(),
+                    repo.getConf().getQueryCacheTtl(), metrics.counter(prefix + "querycache.eviction"));
+            metrics.gauge(prefix + "querycache.size", queryCache::size);
+        } else {
+            this.queryCache = null;
+        }
+
+        this.countCacheHits = metrics.counter(prefix + "countcache.hit");
+
+        if (repo.getConf().getCountCacheTtl() > 0) {
+            this.countCache = new OrientDbEntityCache<>(1, repo.getConf().getCountCacheTtl(),
+                    metrics.counter(prefix + "countcache.eviction"));
+        } else {
+            this.countCache = null;
+        }
     }
 
     /**
-     * Ask the Transaction manager to give us a db, if we are in a transaction running on the local thread,
-     * the existing db is returned, otherwise an db is retrieved from the pool.
+     * Ask the Transaction manager to give us a db, if the local thread is already using a db of this repository (i.e
+     * within a transaction), the existing db is returned, otherwise an db is retrieved from the pool.
      * @return An  OObjectDatabaseTx db
      */
     private OObjectDatabaseTx acquireDb(){
@@ -65,35 +189,47 @@ class OrientDbCrudService<T> implements OrientDbCrud<T, String> {
 
     @Override
     public T delete(T t) {
+        long start = System.nanoTime();
         try {
-            acquireDb().delete(t);
+            OObjectDatabaseTx db = acquireDb();
+            String key = cacheKey(db, t);
+            db.delete(t);
+            evict(key);
         } finally {
             releaseDb();
+            deleteLatency.record(System.nanoTime() - start);
         }
         return t;
     }
 
     @Override
     public void delete(String id) {
+        long start = System.nanoTime();
         ORecordId rid = new ORecordId(id);
         try {
             acquireDb().delete(rid);
+            evict(rid.toString());
         } finally {
             releaseDb();
+            deleteLatency.record(System.nanoTime() - start);
         }
     }
 
     @Override
     public Iterable<T> delete(Iterable<T> ts) {
+        long start = System.nanoTime();
         OObjectDatabaseTx db = acquireDb();
         List<T> deleted = new ArrayList<>();
 
         try {
             for (T todel : ts) {
+                String key = cacheKey(db, todel);
                 deleted.add((T) db.delete(todel));
+                evict(key);
             }
         } finally {
             releaseDb();
+            deleteLatency.record(System.nanoTime() - start);
         }
 
         return deleted;
@@ -101,50 +237,187 @@ class OrientDbCrudService<T> implements OrientDbCrud<T, String> {
 
     @Override
     public T save(T t) {
+        long start = System.nanoTime();
         try {
-            return acquireDb().save(t);
+            OObjectDatabaseTx db = acquireDb();
+            T saved = db.save(t);
+            evict(cacheKey(db, saved));
+            return saved;
         } finally {
             releaseDb();
+            saveLatency.record(System.nanoTime() - start);
         }
     }
 
     @Override
     public Iterable<T> save(Iterable<T> ts) {
+        long start = System.nanoTime();
         List<T> saved = new ArrayList<>();
         OObjectDatabaseTx db = acquireDb();
 
         try {
             for (T tosave : ts) {
-                saved.add((T) db.save(tosave));
+                T entity = db.save(tosave);
+                evict(cacheKey(db, entity));
+                saved.add(entity);
             }
         } finally {
             releaseDb();
+            saveLatency.record(System.nanoTime() - start);
         }
 
         return saved;
     }
 
+    @Override
+    public List<OrientDbBatchResult<T>> saveInBatch(Iterable<T> entities) {
+        return saveInBatch(entities, repo.getConf().getBatchSize(), repo.getConf().getMassiveInsert());
+    }
+
+    @Override
+    public List<OrientDbBatchResult<T>> saveInBatch(Iterable<T> entities, int chunkSize, boolean massiveInsert) {
+        return writeInBatch(entities, chunkSize, massiveInsert, false);
+    }
+
+    @Override
+    public List<OrientDbBatchResult<T>> deleteInBatch(Iterable<T> entities) {
+        return deleteInBatch(entities, repo.getConf().getBatchSize());
+    }
+
+    @Override
+    public List<OrientDbBatchResult<T>> deleteInBatch(Iterable<T> entities, int chunkSize) {
+        return writeInBatch(entities, chunkSize, false, true);
+    }
+
+    /**
+     * Save or delete the entities by chunks, each chunk being committed at once. If a transaction is already running in
+     * the current thread, the entities are written within it and the first failure is thrown.
+     */
+    private List<OrientDbBatchResult<T>> writeInBatch(Iterable<T> entities, int chunkSize, boolean massiveInsert,
+                                                      boolean delete) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be a positive integer.");
+        }
+
+        long start = System.nanoTime();
+        boolean outerTx = txManager.isTransactionActive();
+        List<OrientDbBatchResult<T>> results = new ArrayList<>();
+        Iterator<T> iterator = entities.iterator();
+        OObjectDatabaseTx db = acquireDb();
+
+        try {
+            if (massiveInsert) {
+                db.declareIntent(new OIntentMassiveInsert());
+            }
+
+            while (iterator.hasNext()) {
+                List<T> chunk = new ArrayList<>(chunkSize);
+                while (iterator.hasNext() && chunk.size() < chunkSize) {
+                    chunk.add(iterator.next());
+                }
+
+                List<T> written = new ArrayList<>(chunk.size());
+                List<String> keys = new ArrayList<>(chunk.size());
+
+                if (!outerTx) {
+                    db.begin();
+                }
+
+                try {
+                    for (T entity : chunk) {
+                        if (delete) {
+                            keys.add(cacheKey(db, entity));
+                            db.delete(entity);
+                            written.add(entity);
+                        } else {
+                            T saved = db.save(entity);
+                            keys.add(cacheKey(db, saved));
+                            written.add(saved);
+                        }
+                    }
+
+                    if (!outerTx) {
+                        db.commit();
+                    }
+
+                    for (String key : keys) {
+                        evict(key);
+                    }
+
+                    results.add(new OrientDbBatchResult<>(results.size(), written, null));
+                } catch (RuntimeException e) {
+                    if (outerTx) {
+                        throw e;
+                    }
+
+                    db.rollback();
+                    logger.error("Cannot write chunk {} of {} entities of class {}, the chunk has been rolled back.",
+                            results.size(), chunk.size(), entityClass.getSimpleName(), e);
+                    results.add(new OrientDbBatchResult<>(results.size(), chunk, e));
+                }
+            }
+        } finally {
+            if (massiveInsert) {
+                db.declareIntent(null);
+            }
+            releaseDb();
+            (delete ? deleteLatency : saveLatency).record(System.nanoTime() - start);
+        }
+
+        return results;
+    }
+
     @Override
     public T findOne(String id) {
+        long start = System.nanoTime();
+        String key = new ORecordId(id).toString();
+        long generation = isCacheable() ? cache.getGeneration() : 0L;
+        ODocument cached = isCacheable() ? cache.get(key) : null;
+
         try {
-            return acquireDb().load(new ORecordId(id));
+            OObjectDatabaseTx db = acquireDb();
+
+            if (cached != null) {
+                cacheHits.increment();
+                //The cached record is copied since the returned entity can be modified
+                return db.getUserObjectByRecord(cached.copy(), null);
+            }
+
+            T entity = db.load(new ORecordId(id));
+
+            if (isCacheable()) {
+                cacheMisses.increment();
+                cache(db, key, entity, generation);
+            }
+
+            return entity;
         } finally {
             releaseDb();
+            findLatency.record(System.nanoTime() - start);
         }
     }
 
     @Override
     public T findOne(final EntityFilter<T> tEntityFilter) {
+        if (tEntityFilter instanceof OrientDbFilter) {
+            List<T> result = findByFilter((OrientDbFilter<T>) tEntityFilter, 1);
+            return result.isEmpty() ? null : result.get(0);
+        }
+
+        long start = System.nanoTime();
+        reportFallbackScan(tEntityFilter);
         OObjectDatabaseTx db = acquireDb();
 
         try {
             for (T entity : db.browseClass(entityClass)) {
+                fallbackScanned.increment();
                 if (tEntityFilter.accept(entity)) {
                     return entity;
                 }
             }
         } finally {
             releaseDb();
+            findLatency.record(System.nanoTime() - start);
         }
 
         return null;
@@ -152,33 +425,93 @@ class OrientDbCrudService<T> implements OrientDbCrud<T, String> {
 
     @Override
     public boolean exists(String id) {
+        long start = System.nanoTime();
+
+        if (isCacheable() && cache.get(new ORecordId(id).toString()) != null) {
+            cacheHits.increment();
+            findLatency.record(System.nanoTime() - start);
+            return true;
+        }
+
         try {
             return acquireDb().existsUserObjectByRID(new ORecordId(id));
         } finally {
             releaseDb();
+            findLatency.record(System.nanoTime() - start);
         }
     }
 
+    /**
+     * Load all the entities of the class while the database is acquired.
+     * {@link #cursor(int)} should be preferred for large classes.
+     */
     @Override
     public Iterable<T> findAll() {
-        try {
-            return acquireDb().browseClass(entityClass);
+        long start = System.nanoTime();
+        List<T> entities = new ArrayList<>();
+
+        try (OrientDbCursor<T> cursor = cursor()) {
+            while (cursor.hasNext()) {
+                entities.add(cursor.next());
+            }
         } finally {
-            releaseDb();
+            findLatency.record(System.nanoTime() - start);
         }
+
+        return entities;
     }
 
     @Override
     public Iterable<T> findAll(Iterable<String> ids) {
+        return findAll(ids, repo.getConf().getFetchPlan());
+    }
+
+    /**
+     * Load the entities with a <code>select from [rid, ...]</code> query per chunk of
+     * {@link org.wisdom.orientdb.conf.WOrientConf#getBatchSize()} ids, instead of a load per id.
+     */
+    @Override
+    public List<T> findAll(Iterable<String> ids, String fetchPlan) {
+        long start = System.nanoTime();
+        List<ORID> rids = new ArrayList<>();
+
+        for (String id : ids) {
+            rids.add(new ORecordId(id));
+        }
+
+        Map<ORID, T> loaded = new HashMap<>();
+        int chunkSize = repo.getConf().getBatchSize();
         OObjectDatabaseTx db = acquireDb();
-        List<T> entities = new ArrayList<>();
 
         try {
-            for (String id : ids) {
-                entities.add((T) db.load(new ORecordId(id)));
+            for (int from = 0; from < rids.size(); from += chunkSize) {
+                List<ORID> chunk = rids.subList(from, Math.min(rids.size(), from + chunkSize));
+                StringBuilder sql = new StringBuilder("select from [");
+
+                for (int i = 0; i < chunk.size(); i++) {
+                    sql.append(i == 0 ? "" : ", ").append(chunk.get(i));
+                }
+
+                OSQLSynchQuery<T> query = new OSQLSynchQuery<>(sql.append(']').toString());
+
+                if (fetchPlan != null) {
+                    query.setFetchPlan(fetchPlan);
+                }
+
+                for (T entity : db.query(query)) {
+                    loaded.put(db.getIdentity(entity), entity);
+                }
             }
         } finally {
             releaseDb();
+            findLatency.record(System.nanoTime() - start);
+        }
+
+        //In the order of the ids, null for the missing ones
+        List<T> entities = new ArrayList<>(rids.size());
+
+        for (ORID rid : rids) {
+            entities.add(loaded.get(rid));
         }
 
         return entities;
@@ -186,55 +519,447 @@ class OrientDbCrudService<T> implements OrientDbCrud<T, String> {
 
     @Override
     public Iterable<T> findAll(EntityFilter<T> tEntityFilter) {
+        if (tEntityFilter instanceof OrientDbFilter) {
+            return findByFilter((OrientDbFilter<T>) tEntityFilter, -1);
+        }
+
+        long start = System.nanoTime();
+        reportFallbackScan(tEntityFilter);
+
+        //A transaction must see its own changes, which are only visible from its connection, and the workers cannot
+        //wait for the connection kept by the current thread
+        if (repo.getConf().getScanParallelism() > 1 && !txManager.isBound()) {
+            OrientDbParallelScan<T> scan = new OrientDbParallelScan<>(repo, entityClass, tEntityFilter,
+                    fallbackScanned);
+            List<long[]> ranges;
+
+            try {
+                ranges = scan.split(acquireDb());
+            } finally {
+                releaseDb();
+            }
+
+            try {
+                return scan.scan(ranges);
+            } finally {
+                findLatency.record(System.nanoTime() - start);
+            }
+        }
+
         OObjectDatabaseTx db = acquireDb();
         List<T> entities = new ArrayList<>();
 
         try {
-
             for (T entity : db.browseClass(entityClass)) {
+                fallbackScanned.increment();
                 if (tEntityFilter.accept(entity)) {
                     entities.add(entity);
                 }
             }
         } finally {
             releaseDb();
+            findLatency.record(System.nanoTime() - start);
         }
         return entities;
     }
 
     @Override
     public List<T> query(OQuery<T> command, Object ... args){
+        long start = System.nanoTime();
         try {
             return acquireDb().query(command, args);
         }finally {
             releaseDb();
+            queryLatency.record(System.nanoTime() - start);
         }
     }
 
+    @Override
+    public List<T> queryCached(OQuery<T> command, Object ... args){
+        String key = queryCache == null || txManager.isTransactionActive() ? null : queryKey(command, args);
+
+        if (key == null) {
+            return query(command, args);
+        }
+
+        long generation = queryCache.getGeneration();
+        List<T> cached = queryCache.get(key);
+
+        if (cached != null) {
+            queryCacheHits.increment();
+            return cached;
+        }
+
+        queryCacheMisses.increment();
+        long start = System.nanoTime();
+        OObjectDatabaseTx db = acquireDb();
+
+        try {
+            List<T> result = db.query(command, args);
+            List<T> detached = new ArrayList<>(result.size());
+
+            for (T entity : result) {
+                detached.add((T) db.detach(entity, true));
+            }
+
+            detached = Collections.unmodifiableList(detached);
+            queryCache.put(key, detached, 0, generation);
+            return detached;
+        } finally {
+            releaseDb();
+            queryLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return The key of the query in the query cache, <code>null</code> if the query text is not available.
+     */
+    private static String queryKey(OQuery<?> command, Object... args) {
+        if (!(command instanceof OCommandRequestText)) {
+            return null;
+        }
+
+        StringBuilder key = new StringBuilder(OrientDbStatementCache.normalize(
+                ((OCommandRequestText) command).getText()));
+        key.append('\n').append(command.getLimit()).append('\n').append(command.getFetchPlan());
+
+        if (args != null) {
+            for (Object arg : args) {
+                //The type is part of the key, so that 1 and "1" are different arguments
+                key.append('\n').append(arg == null ? "null" : arg.getClass().getName()).append(':')
+                        .append(arg instanceof Object[] ? Arrays.deepToString((Object[]) arg) : String.valueOf(arg));
+            }
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Translate the filter into an OSQL query on the entity class and run it.
+     *
+     * @param filter The filter to push down to OrientDB.
+     * @param limit The maximum number of entities to return, <code>-1</code> for no limit.
+     * @return The entities accepted by the filter.
+     */
+    private List<T> findByFilter(OrientDbFilter<T> filter, int limit) {
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("select from ").append(entityClass.getSimpleName())
+                .append(" where ").append(filter.toWhereClause(params));
+
+        if (limit > 0) {
+            sql.append(" limit ").append(limit);
+        }
+
+        return query(new OSQLSynchQuery<T>(sql.toString()), params.toArray());
+    }
+
+    /**
+     * Log that the given filter cannot be translated into OSQL and that the whole class is going to be scanned.
+     * The first scan of a given filter class is logged as a warning, the next ones in debug.
+     */
+    private void reportFallbackScan(EntityFilter<T> filter) {
+        fallbackScans.incrementAndGet();
+
+        if (reportedFilters.add(filter.getClass())) {
+            logger.warn("The filter {} cannot be pushed down to OrientDB, the whole class {} is scanned. " +
+                    "Use an OrientDbFilter in order to benefit from the indexes.", filter.getClass().getName(),
+                    entityClass.getSimpleName());
+        } else {
+            logger.debug("Full scan of class {} for filter {}.", entityClass.getSimpleName(), filter.getClass().getName());
+        }
+    }
+
+    /**
+     * @return The number of filters that required a full class scan, since the creation of this service.
+     */
+    long getFallbackScanCount() {
+        return fallbackScans.get();
+    }
+
+    @Override
+    public OrientDbCursor<T> cursor() {
+        return cursor(repo.getConf().getPageSize());
+    }
+
+    @Override
+    public OrientDbCursor<T> cursor(int pageSize) {
+        return cursor(null, pageSize);
+    }
+
+    /**
+     * The cursor uses the connection bound to the current thread, the connection of the running transaction if there
+     * is one, and keeps it until it is closed. It must therefore be closed by the thread which has opened it.
+     */
+    @Override
+    public OrientDbCursor<T> cursor(OrientDbFilter<T> filter, int pageSize) {
+        OObjectDatabaseTx db = acquireDb();
+
+        try {
+            return new OrientDbPagedCursor<>(db, this::releaseDb, entityClass.getSimpleName(), filter, pageSize);
+        } catch (RuntimeException e) {
+            releaseDb();
+            throw e;
+        }
+    }
+
+    @Override
+    public OrientDbPage<T> findPage(OrientDbPageRequest request) {
+        return findPage(request, null);
+    }
+
+    @Override
+    public OrientDbPage<T> findPage(OrientDbPageRequest request, OrientDbFilter<T> filter) {
+        long start = System.nanoTime();
+        OrientDbPageToken token = request.getToken() == null ?
+                OrientDbPageToken.first(request.getSortField(), request.isAscending()) :
+                OrientDbPageToken.decode(request.getToken());
+
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("select from ").append(entityClass.getSimpleName()).append(" where ");
+
+        if (token.isRidOrder()) {
+            sql.append("@rid > ?");
+            params.add(token.getLastRid());
+        } else if (token.getLastKey() == null) {
+            sql.append(token.getSortField()).append(" is not null");
+        } else {
+            //Seek after the last entity, the entities sharing a sort key are ordered by RID
+            sql.append('(').append(token.getSortField()).append(token.isAscending() ? " > ?" : " < ?")
+                    .append(" or (").append(token.getSortField()).append(" = ? and @rid > ?))");
+            params.add(token.getLastKey());
+            params.add(token.getLastKey());
+            params.add(token.getLastRid());
+        }
+
+        if (filter != null) {
+            sql.append(" and (").append(filter.toWhereClause(params)).append(')');
+        }
+
+        //The RID order is not guaranteed without an order by, it also orders the entities sharing a sort key
+        if (token.isRidOrder()) {
+            sql.append(" order by @rid asc");
+        } else {
+            sql.append(" order by ").append(token.getSortField()).append(token.isAscending() ? " asc" : " desc")
+                    .append(", @rid asc");
+        }
+
+        //Fetch one more entity in order to know if there is a next page
+        sql.append(" limit ").append(request.getSize() + 1);
+
+        OObjectDatabaseTx db = acquireDb();
+
+        try {
+            List<T> entities = db.query(new OSQLSynchQuery<T>(sql.toString()), params.toArray());
+
+            if (entities.size() <= request.getSize()) {
+                return new OrientDbPage<>(entities, null);
+            }
+
+            //There is a next page, compute its token
+            List<T> content = new ArrayList<>(entities.subList(0, request.getSize()));
+            T last = content.get(content.size() - 1);
+
+            if (token.isRidOrder()) {
+                return new OrientDbPage<>(content, OrientDbPageToken.afterRid(db.getIdentity(last)).encode());
+            }
+
+            return new OrientDbPage<>(content, token.afterKey(sortKey(db, last, token), db.getIdentity(last))
+                    .encode());
+        } finally {
+            releaseDb();
+            queryLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return The value of the sort field of the token for the given entity, read from its document.
+     */
+    private Object sortKey(OObjectDatabaseTx db, T entity, OrientDbPageToken token) {
+        ODocument doc = db.getRecordByUserObject(entity, false);
+        return doc.field(token.getSortField());
+    }
+
     @Override
     public <RET> RET execute(OCommandRequest command, Object ... args){
+        long start = System.nanoTime();
+        boolean idempotent = false;
         try{
-            return acquireDb().command(command).execute(args);
+            OObjectDatabaseTx db = acquireDb();
+
+            //A query run as a command does not need to clear the caches
+            if (isCached() && command instanceof OCommandSQL) {
+                idempotent = OrientDbStatementCache.isQuery(((OCommandSQL) command).getText());
+            }
+
+            return db.command(command).execute(args);
         }finally {
+            //The command may have changed any record
+            if (!idempotent) {
+                clearCache();
+            }
             releaseDb();
+            queryLatency.record(System.nanoTime() - start);
         }
     }
 
+    @Override
+    public Publisher<T> stream(String sql, Object ... args){
+        return new OrientDbQueryPublisher<>(repo, sql, args);
+    }
+
+    @Override
+    public List<T> queryNamed(String name, Object ... args){
+        OrientDbStatementCache.Statement statement = repo.getStatementCache().getNamed(name);
+
+        if (!statement.isIdempotent()) {
+            throw new IllegalArgumentException("The statement " + name + " is not a query, it must be run with " +
+                    "executeNamed.");
+        }
+
+        return query(new OSQLSynchQuery<T>(statement.getText()), args);
+    }
+
+    @Override
+    public <RET> RET executeNamed(String name, Object ... args){
+        OrientDbStatementCache.Statement statement = repo.getStatementCache().getNamed(name);
+        long start = System.nanoTime();
+        try{
+            return acquireDb().command(new OCommandSQL(statement.getText())).execute(args);
+        }finally {
+            if (!statement.isIdempotent()) {
+                clearCache();
+            }
+            releaseDb();
+            queryLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    //
+    // Second level cache
+    //
+
+    /**
+     * The cache is bypassed within a transaction, which must see its own changes and only them.
+     */
+    private boolean isCacheable() {
+        return cache != null && !txManager.isTransactionActive();
+    }
+
+    private void cache(OObjectDatabaseTx db, String key, T entity, long generation) {
+        if (entity == null) {
+            return;
+        }
+
+        ODocument record = db.getRecordByUserObject(entity, false);
+
+        if (record != null) {
+            cache.put(key, record.copy(), record.getVersion(), generation);
+        }
+    }
+
+    /**
+     * @return The cache key of the entity, <code>null</code> if the cache is disabled or if the entity has not been
+     * persisted yet.
+     */
+    private String cacheKey(OObjectDatabaseTx db, Object entity) {
+        if (cache == null || entity == null) {
+            return null;
+        }
+
+        ORID rid = db.getIdentity(entity);
+        return rid != null && rid.isPersistent() ? rid.toString() : null;
+    }
+
+    /**
+     * Evict the record from the cache, and once again when the running transaction is complete, since the previous
+     * version of the record may have been cached by another thread in between.
+     */
+    private void evict(final String key) {
+        if (!isCached()) {
+            return;
+        }
+
+        evictFromCache(key);
+        txManager.afterCompletion(new Runnable() {
+            @Override
+            public void run() {
+                evictFromCache(key);
+            }
+        });
+    }
+
+    /**
+     * @return <code>true</code> if this service has a second level cache or a query cache.
+     */
+    boolean isCached() {
+        return cache != null || queryCache != null || countCache != null;
+    }
+
+    /**
+     * Evict a record changed by another client of the database from the cache, and clear the query cache.
+     */
+    void evictFromCache(String rid) {
+        if (cache != null && rid != null) {
+            cache.invalidate(rid);
+        }
+
+        //Any write may change the result of the queries
+        if (queryCache != null) {
+            queryCache.clear();
+        }
+
+        if (countCache != null) {
+            countCache.clear();
+        }
+    }
+
+    void evictAllFromCache() {
+        if (cache != null) {
+            cache.clear();
+        }
+
+        if (queryCache != null) {
+            queryCache.clear();
+        }
+
+        if (countCache != null) {
+            countCache.clear();
+        }
+    }
+
+    private void clearCache() {
+        if (!isCached()) {
+            return;
+        }
+
+        evictAllFromCache();
+        txManager.afterCompletion(new Runnable() {
+            @Override
+            public void run() {
+                evictAllFromCache();
+            }
+        });
+    }
+
     @Override
     public T load(T entity) {
+        long start = System.nanoTime();
         try {
             return acquireDb().load(entity);
         }finally {
             releaseDb();
+            findLatency.record(System.nanoTime() - start);
         }
     }
 
     @Override
     public T load(T entity, String fetchPlan) {
+        long start = System.nanoTime();
         try {
             return acquireDb().load(entity, fetchPlan);
         }finally {
             releaseDb();
+            findLatency.record(System.nanoTime() - start);
         }
     }
 
@@ -268,7 +993,85 @@ class OrientDbCrudService<T> implements OrientDbCrud<T, String> {
 
     @Override
     public long count() {
-        return acquireDb().countClass(entityClass.getSimpleName());
+        long start = System.nanoTime();
+        boolean cacheable = countCache != null && !txManager.isTransactionActive();
+        long generation = cacheable ? countCache.getGeneration() : 0;
+
+        if (cacheable) {
+            Long cached = countCache.get(COUNT_KEY);
+
+            if (cached != null) {
+                countCacheHits.increment();
+                countLatency.record(System.nanoTime() - start);
+                return cached;
+            }
+        }
+
+        try {
+            //Sum of the record counts of the clusters of the class, and of the changes of the running transaction
+            long count = acquireDb().countClass(entityClass.getSimpleName());
+
+            if (cacheable) {
+                countCache.put(COUNT_KEY, count, 0, generation);
+            }
+
+            return count;
+        } finally {
+            releaseDb();
+            countLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public long count(EntityFilter<T> filter) {
+        if (filter instanceof OrientDbFilter) {
+            return countByFilter((OrientDbFilter<T>) filter);
+        }
+
+        long start = System.nanoTime();
+        reportFallbackScan(filter);
+        OObjectDatabaseTx db = acquireDb();
+        long count = 0;
+
+        try {
+            for (T entity : db.browseClass(entityClass)) {
+                fallbackScanned.increment();
+                if (filter.accept(entity)) {
+                    count++;
+                }
+            }
+        } finally {
+            releaseDb();
+            countLatency.record(System.nanoTime() - start);
+        }
+
+        return count;
+    }
+
+    /**
+     * Translate the filter into an OSQL count query on the entity class, which uses the class indexes.
+     */
+    private long countByFilter(OrientDbFilter<T> filter) {
+        long start = System.nanoTime();
+        List<Object> params = new ArrayList<>();
+        String sql = "select count(*) as count from " + entityClass.getSimpleName() + " where " +
+                filter.toWhereClause(params);
+
+        try {
+            //The result is a projection, which is not an entity of the class
+            List<ODocument> result = acquireDb().getUnderlying().query(new OSQLSynchQuery<ODocument>(sql),
+                    params.toArray());
+
+            if (result.isEmpty()) {
+                return 0;
+            }
+
+            Number count = result.get(0).field("count");
+            return count == null ? 0 : count.longValue();
+        } finally {
+            releaseDb();
+            countLatency.record(System.nanoTime() - start);
+        }
     }
 
     @Override
@@ -278,22 +1081,71 @@ class OrientDbCrudService<T> implements OrientDbCrud<T, String> {
 
     @Override
     public void executeTransactionalBlock(final Runnable runnable) throws HasBeenRollBackException{
-        txManager.begin();
-
-        try{
-            runnable.run();
-            txManager.commit();
-        }catch (Exception e){
-            txManager.rollback();
-            throw new HasBeenRollBackException(e);
-        } finally {
-            txManager.close();
-        }
+        executeTransactionalBlock(OrientDbPropagation.REQUIRED, runnable);
     }
 
     @Override
     public <A> A executeTransactionalBlock(Callable<A> aCallable) throws HasBeenRollBackException{
-        txManager.begin();
+        return executeTransactionalBlock(OrientDbPropagation.REQUIRED, aCallable);
+    }
+
+    @Override
+    public void executeTransactionalBlock(OrientDbPropagation propagation, final Runnable runnable)
+            throws HasBeenRollBackException {
+        executeTransactionalBlock(propagation, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                runnable.run();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Execute the block, and retry it with a randomized exponential backoff if it has been rolled back because of a
+     * concurrent modification, as configured by {@link org.wisdom.orientdb.conf.WOrientConf#getTxRetries()}.
+     * A block which joins an outer transaction is not retried, nor counted as a conflict, since the conflict is
+     * raised by the outer commit and counted by the outermost block.
+     */
+    @Override
+    public <A> A executeTransactionalBlock(OrientDbPropagation propagation, Callable<A> aCallable)
+            throws HasBeenRollBackException {
+        boolean joined = txManager.isTransactionActive() && propagation != OrientDbPropagation.REQUIRES_NEW;
+        int maxRetries = joined ? 0 : repo.getConf().getTxRetries();
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return executeTransactionalBlockOnce(propagation, aCallable);
+            } catch (HasBeenRollBackException e) {
+                if (joined || !isConcurrentModification(e)) {
+                    throw e;
+                }
+
+                conflicts.increment();
+
+                if (attempt >= maxRetries) {
+                    if (maxRetries > 0) {
+                        logger.warn("Transactional block on {} rolled back after {} conflicting attempts.",
+                                entityClass.getSimpleName(), attempt + 1);
+                    }
+                    throw e;
+                }
+
+                retries.increment();
+                logger.debug("Concurrent modification in a transactional block on {}, retry {}/{}.",
+                        entityClass.getSimpleName(), attempt + 1, maxRetries);
+
+                if (!backoff(attempt)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private <A> A executeTransactionalBlockOnce(OrientDbPropagation propagation, Callable<A> aCallable)
+            throws HasBeenRollBackException {
+        long start = System.nanoTime();
+        txManager.begin(propagation);
 
         try{
             A ret = aCallable.call();
@@ -304,6 +1156,39 @@ class OrientDbCrudService<T> implements OrientDbCrud<T, String> {
             throw new HasBeenRollBackException(e);
         } finally {
             txManager.close();
+            txLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    private static boolean isConcurrentModification(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OConcurrentModificationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wait before the next attempt, a random delay between 0 and <code>txretrydelay * 2^attempt</code>, bounded by
+     * <code>txretrymaxdelay</code>.
+     *
+     * @return <code>false</code> if the thread has been interrupted while waiting.
+     */
+    private boolean backoff(int attempt) {
+        long bound = Math.min(repo.getConf().getTxRetryMaxDelay(),
+                repo.getConf().getTxRetryDelay() << Math.min(attempt, 30));
+
+        if (bound <= 0) {
+            return true;
+        }
+
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         }
     }
 
@@ -0,0 +1,247 @@
+package org.wisdom.orientdb.runtime;
+
+import org.wisdom.orientdb.metrics.OrientDbCounter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of versioned values, used by the {@link OrientDbCrudService} to cache the records of its entity
+ * class keyed by RID, the results of its queries and its count.
+ *
+ * The eviction follows the W-TinyLFU policy: new entries go into a small LRU admission window (1% of the size), the
+ * entries leaving the window enter the main LRU only if they have been requested more often than the main LRU victim.
+ * The frequencies are estimated by a count-min sketch which is aged periodically, so that a burst of one time reads
+ * does not flush the frequently read entries.
+ *
+ * Each entry keeps the version of its value, an older version never replaces a newer one. Each invalidation
+ * increments the generation of the cache, a value read from the database before an invalidation is not cached, since it
+ * may be the invalidated one.
+ *
+ * @param <V> The type of the cached values.
+ */
+final class OrientDbEntityCache<V> {
+    private final int windowSize;
+    private final int mainSize;
+    private final long ttl;
+
+    private final Map<String, Entry<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Entry<V>> main = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final FrequencySketch sketch;
+
+    private final OrientDbCounter evictions;
+
+    private long generation = 0;
+
+    /**
+     * @param maximumSize The maximum number of entries.
+     * @param ttl The time to live of an entry in milliseconds, <code>0</code> for no expiration.
+     * @param evictions Counter of the entries evicted because of the size bound.
+     */
+    OrientDbEntityCache(int maximumSize, long ttl, OrientDbCounter evictions) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("The cache size must be a positive integer.");
+        }
+
+        this.windowSize = Math.max(1, maximumSize / 100);
+        this.mainSize = Math.max(1, maximumSize - windowSize);
+        this.ttl = ttl;
+        this.evictions = evictions;
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * @return The value cached for the key, <code>null</code> if it is not cached or has expired.
+     */
+    synchronized V get(String key) {
+        sketch.increment(key);
+
+        Entry<V> entry = window.get(key);
+
+        if (entry == null) {
+            entry = main.get(key);
+        }
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.isExpired()) {
+            if (window.remove(key) == null) {
+                main.remove(key);
+            }
+            return null;
+        }
+
+        return entry.value;
+    }
+
+    /**
+     * @return The current generation, to be given to {@link #put(String, Object, int, long)}.
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Cache a value, unless a newer version of the value is already cached or the cache has been invalidated since
+     * the given generation.
+     */
+    synchronized void put(String key, V value, int version, long expectedGeneration) {
+        if (generation != expectedGeneration) {
+            return;
+        }
+
+        Entry<V> entry = new Entry<>(value, version, ttl > 0 ? System.currentTimeMillis() + ttl : Long.MAX_VALUE);
+
+        Entry<V> existing = main.get(key);
+
+        if (existing != null) {
+            if (existing.version <= version || existing.isExpired()) {
+                main.put(key, entry);
+            }
+            return;
+        }
+
+        existing = window.get(key);
+
+        if (existing != null && existing.version > version && !existing.isExpired()) {
+            return;
+        }
+
+        window.put(key, entry);
+
+        if (window.size() > windowSize) {
+            Iterator<Map.Entry<String, Entry<V>>> eldest = window.entrySet().iterator();
+            Map.Entry<String, Entry<V>> candidate = eldest.next();
+            eldest.remove();
+            admit(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    synchronized void invalidate(String key) {
+        generation++;
+
+        if (window.remove(key) == null) {
+            main.remove(key);
+        }
+    }
+
+    synchronized void clear() {
+        generation++;
+        window.clear();
+        main.clear();
+    }
+
+    synchronized int size() {
+        return window.size() + main.size();
+    }
+
+    /**
+     * Move an entry leaving the admission window into the main LRU, if it is more frequently requested than the main
+     * LRU victim.
+     */
+    private void admit(String key, Entry<V> candidate) {
+        if (main.size() < mainSize) {
+            main.put(key, candidate);
+            return;
+        }
+
+        Iterator<Map.Entry<String, Entry<V>>> eldest = main.entrySet().iterator();
+        Map.Entry<String, Entry<V>> victim = eldest.next();
+
+        if (sketch.frequency(key) > sketch.frequency(victim.getKey())) {
+            eldest.remove();
+            main.put(key, candidate);
+        }
+
+        evictions.increment();
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final int version;
+        private final long expiration;
+
+        private Entry(V value, int version, long expiration) {
+            this.value = value;
+            this.version = version;
+            this.expiration = expiration;
+        }
+
+        private boolean isExpired() {
+            return expiration != Long.MAX_VALUE && System.currentTimeMillis() > expiration;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4 rows, the counters are bounded to 15 and halved once the number of increments reaches ten
+     * times the cache size.
+     */
+    private static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x97cb3127, 0xb5ad4ece, 0x2c1b3c6d, 0x5f356495};
+
+        private final int[][] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions = 0;
+
+        private FrequencySketch(int maximumSize) {
+            int width = Integer.highestOneBit(Math.max(16, Math.min(maximumSize, 1 << 24)) * 2 - 1);
+            table = new int[DEPTH][width];
+            mask = width - 1;
+            sampleSize = 10 * maximumSize;
+        }
+
+        private void increment(String key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+
+            for (int i = 0; i < DEPTH; i++) {
+                int index = index(hash, i);
+                if (table[i][index] < MAX_COUNT) {
+                    table[i][index]++;
+                    added = true;
+                }
+            }
+
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private int frequency(String key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+
+            for (int i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency, table[i][index(hash, i)]);
+            }
+
+            return frequency;
+        }
+
+        private void reset() {
+            for (int[] row : table) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>>= 1;
+                }
+            }
+            additions /= 2;
+        }
+
+        private int index(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private static int spread(int hash) {
+            int h = hash * 0x85ebca6b;
+            return h ^ (h >>> 13);
+        }
+    }
+}
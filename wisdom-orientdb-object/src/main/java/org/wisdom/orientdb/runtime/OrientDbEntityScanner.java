@@ -0,0 +1,281 @@
+package org.wisdom.orientdb.runtime;
+
+import org.osgi.framework.Bundle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Find the entity classes of a package of a bundle, the classes annotated with <code>javax.persistence.Entity</code>,
+ * by reading the header and the annotations of their class file, without loading them.
+ *
+ * The entity class names are kept by bundle id, bundle last modification time and package, in a properties file, so
+ * that a bundle is only scanned again once it has been updated, including across restarts.
+ */
+final class OrientDbEntityScanner {
+    private static final String ENTITY = "Ljavax/persistence/Entity;";
+    private static final int ACC_INTERFACE = 0x0200;
+
+    private final Logger logger = LoggerFactory.getLogger(OrientDbEntityScanner.class);
+
+    private final File cacheFile;
+    private final Properties cache = new Properties();
+    private boolean modified = false;
+
+    /**
+     * @param cacheFile The file of the scan results, <code>null</code> to keep them in memory only.
+     */
+    OrientDbEntityScanner(File cacheFile) {
+        this.cacheFile = cacheFile;
+
+        if (cacheFile != null && cacheFile.isFile()) {
+            try (InputStream in = new FileInputStream(cacheFile)) {
+                cache.load(in);
+            } catch (IOException e) {
+                logger.warn("Cannot read the entity cache {}, the bundles are scanned.", cacheFile, e);
+                cache.clear();
+            }
+        }
+    }
+
+    /**
+     * @param bundle The bundle to scan.
+     * @param packageName The package of the entities, including its sub-packages.
+     * @return The names of the entity classes of the package.
+     */
+    synchronized List<String> findEntities(Bundle bundle, String packageName) {
+        String bundlePrefix = bundle.getBundleId() + "@";
+        String versionPrefix = bundlePrefix + bundle.getLastModified() + ":";
+        String key = versionPrefix + packageName;
+        String cached = cache.getProperty(key);
+
+        if (cached != null) {
+            return cached.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(cached.split(","));
+        }
+
+        List<String> entities = scan(bundle, packageName);
+
+        //Forget the results of the previous versions of the bundle
+        for (String name : cache.stringPropertyNames()) {
+            if (name.startsWith(bundlePrefix) && !name.startsWith(versionPrefix)) {
+                cache.remove(name);
+            }
+        }
+
+        StringBuilder value = new StringBuilder();
+        for (String entity : entities) {
+            value.append(value.length() == 0 ? "" : ",").append(entity);
+        }
+
+        cache.setProperty(key, value.toString());
+        modified = true;
+        return entities;
+    }
+
+    /**
+     * Write the scan results to the cache file, if they have changed.
+     */
+    synchronized void save() {
+        if (!modified || cacheFile == null) {
+            return;
+        }
+
+        try (OutputStream out = new FileOutputStream(cacheFile)) {
+            cache.store(out, "wisdom-orientdb entity classes by bundle@lastModified:package");
+            modified = false;
+        } catch (IOException e) {
+            logger.warn("Cannot write the entity cache {}.", cacheFile, e);
+        }
+    }
+
+    private List<String> scan(Bundle bundle, String packageName) {
+        List<String> entities = new ArrayList<>();
+        Enumeration<URL> entries = bundle.findEntries(packageName.replace('.', '/'), "*.class", true);
+
+        while (entries != null && entries.hasMoreElements()) {
+            URL entry = entries.nextElement();
+
+            try (InputStream in = entry.openStream()) {
+                String entity = entityName(in);
+
+                if (entity != null) {
+                    entities.add(entity);
+                }
+            } catch (IOException e) {
+                logger.error("Cannot read the class file {}", entry, e);
+            }
+        }
+
+        return entities;
+    }
+
+    /**
+     * @param classFile The content of a class file.
+     * @return The name of the class if it is annotated with <code>javax.persistence.Entity</code>, <code>null</code>
+     * otherwise.
+     * @throws IOException if the class file cannot be read or is invalid.
+     */
+    static String entityName(InputStream classFile) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(classFile));
+
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file.");
+        }
+
+        skip(in, 4); //minor and major versions
+
+        int count = in.readUnsignedShort();
+        String[] utf8 = new String[count];
+        int[] classNames = new int[count];
+
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+
+            switch (tag) {
+                case 1: //Utf8
+                    utf8[i] = in.readUTF();
+                    break;
+                case 7: //Class
+                    classNames[i] = in.readUnsignedShort();
+                    break;
+                case 8: //String
+                case 16: //MethodType
+                case 19: //Module
+                case 20: //Package
+                    skip(in, 2);
+                    break;
+                case 15: //MethodHandle
+                    skip(in, 3);
+                    break;
+                case 3: //Integer
+                case 4: //Float
+                case 9: //Fieldref
+                case 10: //Methodref
+                case 11: //InterfaceMethodref
+                case 12: //NameAndType
+                case 17: //Dynamic
+                case 18: //InvokeDynamic
+                    skip(in, 4);
+                    break;
+                case 5: //Long
+                case 6: //Double
+                    skip(in, 8);
+                    i++; //Takes two entries
+                    break;
+                default:
+                    throw new IOException("Invalid constant pool tag " + tag + ".");
+            }
+        }
+
+        int access = in.readUnsignedShort();
+        int thisClass = in.readUnsignedShort();
+
+        //Interfaces and annotations
+        if ((access & ACC_INTERFACE) != 0) {
+            return null;
+        }
+
+        skip(in, 2); //super class
+        skip(in, 2 * in.readUnsignedShort()); //interfaces
+        skipMembers(in); //fields
+        skipMembers(in); //methods
+
+        int attributes = in.readUnsignedShort();
+
+        for (int i = 0; i < attributes; i++) {
+            String name = utf8[in.readUnsignedShort()];
+            int length = in.readInt();
+
+            if (!"RuntimeVisibleAnnotations".equals(name)) {
+                skip(in, length);
+                continue;
+            }
+
+            int annotations = in.readUnsignedShort();
+
+            for (int j = 0; j < annotations; j++) {
+                if (ENTITY.equals(utf8[in.readUnsignedShort()])) {
+                    return utf8[classNames[thisClass]].replace('/', '.');
+                }
+                skipElementValuePairs(in);
+            }
+        }
+
+        return null;
+    }
+
+    private static void skipMembers(DataInputStream in) throws IOException {
+        int members = in.readUnsignedShort();
+
+        for (int i = 0; i < members; i++) {
+            skip(in, 6); //access flags, name and descriptor
+            int attributes = in.readUnsignedShort();
+
+            for (int j = 0; j < attributes; j++) {
+                skip(in, 2);
+                skip(in, in.readInt());
+            }
+        }
+    }
+
+    private static void skipElementValuePairs(DataInputStream in) throws IOException {
+        int pairs = in.readUnsignedShort();
+
+        for (int i = 0; i < pairs; i++) {
+            skip(in, 2); //name
+            skipElementValue(in);
+        }
+    }
+
+    private static void skipElementValue(DataInputStream in) throws IOException {
+        int tag = in.readUnsignedByte();
+
+        switch (tag) {
+            case 'e': //enum, type and constant names
+                skip(in, 4);
+                break;
+            case '@':
+                skip(in, 2);
+                skipElementValuePairs(in);
+                break;
+            case '[':
+                int values = in.readUnsignedShort();
+                for (int i = 0; i < values; i++) {
+                    skipElementValue(in);
+                }
+                break;
+            default: //constant or class
+                skip(in, 2);
+        }
+    }
+
+    private static void skip(DataInputStream in, int length) throws IOException {
+        int remaining = length;
+
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+
+            if (skipped <= 0) {
+                in.readByte(); //Throws EOFException at the end of the stream
+                skipped = 1;
+            }
+
+            remaining -= skipped;
+        }
+    }
+}
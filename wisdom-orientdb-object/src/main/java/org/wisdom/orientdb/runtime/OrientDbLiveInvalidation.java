@@ -0,0 +1,109 @@
+package org.wisdom.orientdb.runtime;
+
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.db.record.ORecordOperation;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.OCommandSQL;
+import com.orientechnologies.orient.core.sql.query.OLiveQuery;
+import com.orientechnologies.orient.core.sql.query.OLiveResultListener;
+import com.orientechnologies.orient.object.db.OObjectDatabaseTx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Evict the records changed by any client of the database from the second level and query caches of the crud
+ * services, by subscribing to an OrientDB live query (<code>live select from [entity]</code>) per entity class.
+ *
+ * The live queries are bound to a dedicated connection, which is not taken from the pool and stays open until
+ * {@link #close()}.
+ */
+final class OrientDbLiveInvalidation {
+    private final Logger logger = LoggerFactory.getLogger(OrientDbLiveInvalidation.class);
+
+    private final OObjectDatabaseTx db;
+
+    private final List<Integer> tokens = new ArrayList<>();
+
+    private OrientDbLiveInvalidation(OObjectDatabaseTx db) {
+        this.db = db;
+    }
+
+    /**
+     * Subscribe to the changes of the entity class of each crud service which has a second level or query cache.
+     *
+     * @param repo The repository of the crud services.
+     * @param crudServices The crud services to invalidate.
+     * @return The subscriptions, to be closed with the repository.
+     */
+    static OrientDbLiveInvalidation subscribe(OrientDbRepositoryImpl repo,
+                                              Collection<OrientDbCrudService<?>> crudServices) {
+        OrientDbLiveInvalidation live = new OrientDbLiveInvalidation(repo.openDb());
+
+        try {
+            for (OrientDbCrudService<?> crud : crudServices) {
+                if (crud.isCached()) {
+                    live.subscribe(crud);
+                }
+            }
+        } catch (RuntimeException e) {
+            live.close();
+            throw e;
+        } finally {
+            //The connection is only used by the live queries
+            ODatabaseRecordThreadLocal.INSTANCE.remove();
+        }
+
+        return live;
+    }
+
+    private void subscribe(final OrientDbCrudService<?> crud) {
+        final String className = crud.getEntityClass().getSimpleName();
+
+        List<ODocument> result = db.getUnderlying().query(new OLiveQuery<ODocument>("live select from " + className,
+                new OLiveResultListener() {
+                    @Override
+                    public void onLiveResult(int token, ORecordOperation operation) {
+                        //A created record is not cached, but it changes the result of the cached queries
+                        crud.evictFromCache(operation.getRecord().getIdentity().toString());
+                    }
+
+                    @Override
+                    public void onError(int token) {
+                        logger.warn("The live query on {} has failed, the cache of {} is cleared.", className,
+                                crud.getEntityClass().getName());
+                        crud.evictAllFromCache();
+                    }
+
+                    @Override
+                    public void onUnsubscribe(int token) {
+                        logger.debug("Unsubscribed from the live query on {}.", className);
+                    }
+                }));
+
+        Integer token = result.get(0).field("token");
+        tokens.add(token);
+        logger.debug("Subscribed to the live query on {} with token {}.", className, token);
+    }
+
+    void close() {
+        ODatabaseRecordThreadLocal.INSTANCE.set(db.getUnderlying());
+
+        try {
+            for (Integer token : tokens) {
+                try {
+                    db.getUnderlying().command(new OCommandSQL("live unsubscribe " + token)).execute();
+                } catch (RuntimeException e) {
+                    logger.debug("Cannot unsubscribe from the live query {}.", token, e);
+                }
+            }
+            tokens.clear();
+        } finally {
+            db.close();
+            ODatabaseRecordThreadLocal.INSTANCE.remove();
+        }
+    }
+}
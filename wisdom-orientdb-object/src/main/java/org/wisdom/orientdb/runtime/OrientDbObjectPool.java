@@ -0,0 +1,175 @@
+package org.wisdom.orientdb.runtime;
+
+import com.orientechnologies.orient.core.db.OPartitionedDatabasePool;
+import com.orientechnologies.orient.object.db.OObjectDatabasePool;
+import com.orientechnologies.orient.object.db.OObjectDatabaseTx;
+import com.orientechnologies.orient.object.db.OObjectDatabaseTxPooled;
+import org.wisdom.orientdb.conf.WOrientConf;
+
+/**
+ * The connection pool of an object repository, created according to {@link WOrientConf#getPoolType()}.
+ *
+ * Both pools return the connection already acquired by the current thread, if it has not been released yet.
+ */
+abstract class OrientDbObjectPool {
+
+    private volatile Runnable releaseListener = () -> {};
+
+    /**
+     * @param conf The repository configuration.
+     * @return A new pool for the database of the given configuration.
+     */
+    static OrientDbObjectPool create(WOrientConf conf){
+        switch (conf.getPoolType()){
+            case PARTITIONED:
+                return new Partitioned(conf);
+            case CLASSIC:
+            default:
+                return new Classic(conf);
+        }
+    }
+
+    /**
+     * @return A connection from the pool, it is released by closing it.
+     */
+    abstract OObjectDatabaseTx acquire();
+
+    abstract String getName();
+
+    /**
+     * @return The number of idle connections of the pool.
+     */
+    abstract int getAvailable();
+
+    /**
+     * @return The number of connections created by the pool, idle or in use.
+     */
+    abstract int getCreated();
+
+    abstract void close();
+
+    /**
+     * @param listener Called by the thread which releases a connection, once it is back in the pool.
+     */
+    void setReleaseListener(Runnable listener){
+        releaseListener = listener;
+    }
+
+    /**
+     * Notify the release listener if the given connection has been released to the pool by its last close.
+     */
+    void released(OObjectDatabaseTx db){
+        if (db.isClosed()) {
+            releaseListener.run();
+        }
+    }
+
+    /**
+     * @return The underlying {@link OObjectDatabasePool}, or <code>null</code> if it is not the pool in use.
+     */
+    OObjectDatabasePool getObjectPool(){
+        return null;
+    }
+
+    /**
+     * The classic OrientDB object pool, acquire and release are synchronized on the pool.
+     */
+    private static final class Classic extends OrientDbObjectPool {
+        private final OObjectDatabasePool pool;
+        private final String url;
+        private final String user;
+
+        private Classic(WOrientConf conf){
+            url = conf.getUrl();
+            user = conf.getUser();
+            pool = new OObjectDatabasePool(conf.getUrl(), conf.getUser(), conf.getPass()) {
+                @Override
+                protected OObjectDatabaseTxPooled createResource(Object owner, String iDatabaseName,
+                                                                 Object... iAdditionalArgs) {
+                    return new OObjectDatabaseTxPooled((OObjectDatabasePool) owner, iDatabaseName,
+                            (String) iAdditionalArgs[0], (String) iAdditionalArgs[1]) {
+                        @Override
+                        public void close() {
+                            super.close();
+                            released(this);
+                        }
+                    };
+                }
+            };
+            pool.setup(conf.getPoolMin(), conf.getPoolMax());
+        }
+
+        @Override
+        OObjectDatabaseTx acquire() {
+            return pool.acquire();
+        }
+
+        @Override
+        String getName() {
+            return pool.getName();
+        }
+
+        @Override
+        int getAvailable() {
+            return pool.getAvailableConnections(url, user);
+        }
+
+        @Override
+        int getCreated() {
+            return pool.getCreatedInstances(url, user);
+        }
+
+        @Override
+        void close() {
+            pool.close();
+        }
+
+        @Override
+        OObjectDatabasePool getObjectPool() {
+            return pool;
+        }
+    }
+
+    /**
+     * The partitioned OrientDB document pool, each acquired document database is wrapped in an object database.
+     * Closing the object database returns the document database to its partition.
+     */
+    private static final class Partitioned extends OrientDbObjectPool {
+        private final OPartitionedDatabasePool pool;
+
+        private Partitioned(WOrientConf conf){
+            pool = new OPartitionedDatabasePool(conf.getUrl(), conf.getUser(), conf.getPass(), conf.getPoolMax());
+        }
+
+        @Override
+        OObjectDatabaseTx acquire() {
+            return new OObjectDatabaseTx(pool.acquire()) {
+                @Override
+                public void close() {
+                    super.close();
+                    released(this); //The document database is back in its partition once closed as often as acquired
+                }
+            };
+        }
+
+        @Override
+        String getName() {
+            return pool.getUrl();
+        }
+
+        @Override
+        int getAvailable() {
+            return pool.getAvailableConnections();
+        }
+
+        @Override
+        int getCreated() {
+            return pool.getCreatedInstances();
+        }
+
+        @Override
+        void close() {
+            pool.close();
+        }
+    }
+}
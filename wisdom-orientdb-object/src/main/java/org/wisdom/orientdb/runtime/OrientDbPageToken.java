@@ -0,0 +1,178 @@
+package org.wisdom.orientdb.runtime;
+
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.regex.Pattern;
+
+/**
+ * Position of a keyset pagination, encoded in the opaque token of an {@link org.wisdom.orientdb.object.OrientDbPage}.
+ *
+ * When the entities are sorted by RID, the position is the last RID returned.
+ * When they are sorted by a field, the position is the last key and the RID of the last entity returned, the entities
+ * sharing a key being ordered by RID.
+ */
+final class OrientDbPageToken {
+    private static final Pattern FIELD_PATTERN = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*(\\.[A-Za-z_$][A-Za-z0-9_$]*)*");
+
+    private static final String SEPARATOR = "\n";
+
+    private final String sortField;
+    private final boolean ascending;
+    private final ORID lastRid;
+    private final Object lastKey;
+
+    private OrientDbPageToken(String sortField, boolean ascending, ORID lastRid, Object lastKey) {
+        if (sortField != null && !FIELD_PATTERN.matcher(sortField).matches()) {
+            throw new IllegalArgumentException("Invalid sort field: " + sortField);
+        }
+        this.sortField = sortField;
+        this.ascending = ascending;
+        this.lastRid = lastRid;
+        this.lastKey = lastKey;
+    }
+
+    /**
+     * @param sortField The sort field, <code>null</code> to sort by RID.
+     * @param ascending The sort order, ignored when sorting by RID.
+     * @return The position before the first entity.
+     */
+    static OrientDbPageToken first(String sortField, boolean ascending) {
+        return new OrientDbPageToken(sortField, ascending || sortField == null, new ORecordId(), null);
+    }
+
+    static OrientDbPageToken afterRid(ORID rid) {
+        return new OrientDbPageToken(null, true, rid, null);
+    }
+
+    OrientDbPageToken afterKey(Object key, ORID rid) {
+        return new OrientDbPageToken(sortField, ascending, rid, key);
+    }
+
+    boolean isRidOrder() {
+        return sortField == null;
+    }
+
+    String getSortField() {
+        return sortField;
+    }
+
+    boolean isAscending() {
+        return ascending;
+    }
+
+    /**
+     * @return The RID of the last entity returned, the RID before the first entity for the first page.
+     */
+    ORID getLastRid() {
+        return lastRid;
+    }
+
+    /**
+     * @return The last key returned, <code>null</code> for the first page.
+     */
+    Object getLastKey() {
+        return lastKey;
+    }
+
+    String encode() {
+        String raw;
+
+        if (isRidOrder()) {
+            raw = "r" + SEPARATOR + lastRid.toString();
+        } else {
+            raw = "k" + SEPARATOR + sortField + SEPARATOR + (ascending ? "a" : "d") + SEPARATOR + lastRid + SEPARATOR +
+                    typeOf(lastKey) + SEPARATOR + (lastKey instanceof Date ? ((Date) lastKey).getTime() : lastKey);
+        }
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static OrientDbPageToken decode(String token) {
+        String raw;
+
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid page token: " + token, e);
+        }
+
+        String[] parts = raw.split(SEPARATOR, 6);
+
+        try {
+            if (parts.length == 2 && "r".equals(parts[0])) {
+                return afterRid(new ORecordId(parts[1]));
+            }
+
+            if (parts.length == 6 && "k".equals(parts[0])) {
+                return new OrientDbPageToken(parts[1], "a".equals(parts[2]), new ORecordId(parts[3]),
+                        parseKey(parts[4], parts[5]));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid page token: " + token, e);
+        }
+
+        throw new IllegalArgumentException("Invalid page token: " + token);
+    }
+
+    //
+    // Helper methods
+    //
+
+    private static char typeOf(Object key) {
+        if (key instanceof String) {
+            return 'S';
+        } else if (key instanceof Integer) {
+            return 'I';
+        } else if (key instanceof Long) {
+            return 'L';
+        } else if (key instanceof Short) {
+            return 'H';
+        } else if (key instanceof Byte) {
+            return 'Y';
+        } else if (key instanceof Double) {
+            return 'D';
+        } else if (key instanceof Float) {
+            return 'F';
+        } else if (key instanceof BigDecimal) {
+            return 'N';
+        } else if (key instanceof Boolean) {
+            return 'B';
+        } else if (key instanceof Date) {
+            return 'T';
+        }
+
+        throw new IllegalArgumentException("Unsupported sort key type: " + (key == null ? null : key.getClass()));
+    }
+
+    private static Object parseKey(String type, String value) {
+        switch (type) {
+            case "S":
+                return value;
+            case "I":
+                return Integer.valueOf(value);
+            case "L":
+                return Long.valueOf(value);
+            case "H":
+                return Short.valueOf(value);
+            case "Y":
+                return Byte.valueOf(value);
+            case "D":
+                return Double.valueOf(value);
+            case "F":
+                return Float.valueOf(value);
+            case "N":
+                return new BigDecimal(value);
+            case "B":
+                return Boolean.valueOf(value);
+            case "T":
+                return new Date(Long.parseLong(value));
+            default:
+                throw new IllegalArgumentException("Unknown sort key type " + type);
+        }
+    }
+}
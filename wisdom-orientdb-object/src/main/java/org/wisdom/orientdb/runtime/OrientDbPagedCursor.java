@@ -0,0 +1,132 @@
+package org.wisdom.orientdb.runtime;
+
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
+import com.orientechnologies.orient.object.db.OObjectDatabaseTx;
+import org.wisdom.orientdb.object.OrientDbCursor;
+import org.wisdom.orientdb.object.OrientDbFilter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * {@link OrientDbCursor} implementation which pages through a class by RID range,
+ * i.e <code>select from Class where @rid > :last order by @rid limit :pageSize</code>.
+ *
+ * Only the current page is kept by the cursor, and the same connection is used for all the pages. The connection is
+ * released to the transaction manager once the cursor is closed.
+ */
+class OrientDbPagedCursor<T> implements OrientDbCursor<T> {
+    private final OObjectDatabaseTx db;
+
+    private final Runnable release;
+
+    private final String sql;
+
+    private final List<Object> filterParams;
+
+    private final int pageSize;
+
+    private Iterator<T> page = Collections.emptyIterator();
+
+    private ORID last = new ORecordId();
+
+    private boolean lastPage = false;
+
+    private boolean closed = false;
+
+    /**
+     * @param db The database used for the whole life of the cursor.
+     * @param release Release the database, called once the cursor is closed.
+     * @param className The entity class name.
+     * @param filter An optional filter, <code>null</code> to browse the whole class.
+     * @param pageSize The maximum number of entities loaded at once.
+     */
+    OrientDbPagedCursor(OObjectDatabaseTx db, Runnable release, String className, OrientDbFilter<T> filter,
+                        int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be a positive integer.");
+        }
+
+        this.db = db;
+        this.release = release;
+        this.pageSize = pageSize;
+        this.filterParams = new ArrayList<>();
+
+        StringBuilder query = new StringBuilder("select from ").append(className).append(" where @rid > ?");
+        if (filter != null) {
+            query.append(" and (").append(filter.toWhereClause(filterParams)).append(')');
+        }
+        this.sql = query.append(" order by @rid asc limit ").append(pageSize).toString();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+
+        if (!page.hasNext() && !lastPage) {
+            fetchNextPage();
+        }
+
+        if (!page.hasNext()) {
+            close();
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+    @Override
+    public Stream<T> stream() {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            page = Collections.emptyIterator();
+            release.run();
+        }
+    }
+
+    private void fetchNextPage() {
+        //The connection might have been unbound from the thread between two pages
+        ODatabaseRecordThreadLocal.INSTANCE.set(db.getUnderlying());
+
+        List<Object> params = new ArrayList<>(filterParams.size() + 1);
+        params.add(last);
+        params.addAll(filterParams);
+
+        List<T> entities = db.query(new OSQLSynchQuery<T>(sql), params.toArray());
+
+        lastPage = entities.size() < pageSize;
+
+        if (!entities.isEmpty()) {
+            last = db.getIdentity(entities.get(entities.size() - 1));
+        }
+
+        page = entities.iterator();
+    }
+}
@@ -0,0 +1,147 @@
+package org.wisdom.orientdb.runtime;
+
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.iterator.ORecordIteratorCluster;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.object.db.OObjectDatabaseTx;
+import org.wisdom.api.model.EntityFilter;
+import org.wisdom.orientdb.metrics.OrientDbCounter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Scan of the records of an entity class by the fork join pool of the repository, used when an {@link EntityFilter}
+ * cannot be pushed down to OrientDB.
+ *
+ * The class is split by cluster, and each cluster into ranges of positions, in about four ranges per worker. The ranges
+ * are split recursively between the workers, each range is browsed with its own connection from the pool and the
+ * accepted entities are detached, the results are merged in the order of the clusters and positions. The connection
+ * used to split the class is released before the workers start, so that a scan uses at most
+ * {@link org.wisdom.orientdb.conf.WOrientConf#getScanParallelism()} connections.
+ *
+ * @param <T> The type of the entities.
+ */
+final class OrientDbParallelScan<T> {
+    private static final int RANGES_PER_WORKER = 4;
+
+    private final OrientDbRepositoryImpl repo;
+    private final Class<T> entityClass;
+    private final EntityFilter<T> filter;
+    private final OrientDbCounter scanned;
+
+    OrientDbParallelScan(OrientDbRepositoryImpl repo, Class<T> entityClass, EntityFilter<T> filter,
+                         OrientDbCounter scanned) {
+        this.repo = repo;
+        this.entityClass = entityClass;
+        this.filter = filter;
+        this.scanned = scanned;
+    }
+
+    /**
+     * Browse the given ranges with the workers of the repository pool. The current thread must not hold a connection
+     * of the repository, the workers could otherwise wait for it forever.
+     *
+     * @param ranges The ranges returned by {@link #split(OObjectDatabaseTx)}.
+     * @return The detached entities accepted by the filter.
+     */
+    List<T> scan(List<long[]> ranges) {
+        if (ranges.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        return repo.getScanPool().invoke(new ScanTask(ranges, 0, ranges.size()));
+    }
+
+    /**
+     * @param db The connection of the current thread, used to read the ranges of the clusters of the class.
+     * @return The ranges to browse, as <code>{clusterId, first position, last position}</code>.
+     */
+    List<long[]> split(OObjectDatabaseTx db) {
+        ODatabaseDocumentTx underlying = db.getUnderlying();
+        OClass oClass = underlying.getMetadata().getSchema().getClass(entityClass.getSimpleName());
+        List<long[]> clusters = new ArrayList<>();
+        long total = 0;
+
+        if (oClass == null) {
+            return clusters;
+        }
+
+        for (int clusterId : oClass.getPolymorphicClusterIds()) {
+            long[] range = underlying.getStorage().getClusterDataRange(clusterId);
+
+            if (range[0] >= 0 && range[1] >= range[0]) {
+                clusters.add(new long[]{clusterId, range[0], range[1]});
+                total += range[1] - range[0] + 1;
+            }
+        }
+
+        long chunk = Math.max(repo.getConf().getPageSize(),
+                total / (RANGES_PER_WORKER * repo.getScanPool().getParallelism()) + 1);
+        List<long[]> ranges = new ArrayList<>();
+
+        for (long[] cluster : clusters) {
+            for (long first = cluster[1]; first <= cluster[2]; first += chunk) {
+                ranges.add(new long[]{cluster[0], first, Math.min(cluster[2], first + chunk - 1)});
+            }
+        }
+
+        return ranges;
+    }
+
+    private List<T> browse(long[] range) {
+        List<T> accepted = new ArrayList<>();
+        OObjectDatabaseTx db = repo.acquireDb();
+
+        try {
+            ODatabaseDocumentTx underlying = db.getUnderlying();
+            ORecordIteratorCluster<ODocument> records = new ORecordIteratorCluster<>(underlying, underlying,
+                    (int) range[0], range[1], range[2]);
+
+            for (ODocument record : records) {
+                scanned.increment();
+                @SuppressWarnings("unchecked")
+                T entity = (T) db.getUserObjectByRecord(record, null);
+
+                if (filter.accept(entity)) {
+                    accepted.add(db.<T>detach(entity, true));
+                }
+            }
+        } finally {
+            db.close();
+            ODatabaseRecordThreadLocal.INSTANCE.remove();
+        }
+
+        return accepted;
+    }
+
+    private final class ScanTask extends RecursiveTask<List<T>> {
+        private final List<long[]> ranges;
+        private final int from;
+        private final int to;
+
+        private ScanTask(List<long[]> ranges, int from, int to) {
+            this.ranges = ranges;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<T> compute() {
+            if (to - from == 1) {
+                return browse(ranges.get(from));
+            }
+
+            int middle = (from + to) >>> 1;
+            ScanTask right = new ScanTask(ranges, middle, to);
+            right.fork();
+
+            List<T> result = new ScanTask(ranges, from, middle).compute();
+            result.addAll(right.join());
+            return result;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.wisdom.orientdb.runtime;
+
+import org.wisdom.orientdb.conf.WOrientConf;
+import org.wisdom.orientdb.metrics.OrientDbCounter;
+import org.wisdom.orientdb.metrics.OrientDbMetricRegistry;
+import org.wisdom.orientdb.object.OrientDbPoolExhaustedException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bound the number of threads waiting for a connection of the pool, and the time they wait, according to
+ * {@link WOrientConf#getPoolMaxWaiters()} and {@link WOrientConf#getPoolAcquireTimeout()}.
+ *
+ * A thread takes one of the <code>poolmax</code> permits before acquiring a connection, and gives it back once the
+ * connection has been released to the pool, which notifies it through {@link OrientDbObjectPool#setReleaseListener}.
+ * The pools return the connection already acquired by the current thread, a thread which holds a permit therefore
+ * acquires it again without waiting. The connections acquired by the repository itself (initialization, warm-up,
+ * validation) do not take a permit, a thread may then still wait within the pool.
+ */
+final class OrientDbPoolAdmission {
+    private final WOrientConf conf;
+
+    private final Semaphore permits;
+
+    /**
+     * Set while the current thread holds a permit.
+     */
+    private final ThreadLocal<Boolean> admitted = new ThreadLocal<>();
+
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final OrientDbCounter rejected;
+    private final OrientDbCounter timeouts;
+
+    OrientDbPoolAdmission(OrientDbObjectPool pool, WOrientConf conf, OrientDbMetricRegistry metrics) {
+        this.conf = conf;
+        this.permits = new Semaphore(conf.getPoolMax());
+        this.rejected = metrics.counter("pool.rejected");
+        this.timeouts = metrics.counter("pool.timeout");
+        metrics.gauge("pool.waiters", waiters::get);
+        pool.setReleaseListener(this::release);
+    }
+
+    /**
+     * Wait until a connection can be acquired without waiting within the pool.
+     *
+     * @param start The {@link System#nanoTime()} of the beginning of the acquisition.
+     * @throws OrientDbPoolExhaustedException if too many threads are waiting, or if no connection has been released
+     * in time.
+     */
+    void await(long start) {
+        if (admitted.get() != null) {
+            return; //The pool returns the connection of the current thread
+        }
+
+        if (!permits.tryAcquire()) {
+            waitForPermit(start);
+        }
+
+        admitted.set(Boolean.TRUE);
+    }
+
+    private void waitForPermit(long start) {
+        long timeout = conf.getPoolAcquireTimeout();
+        int maxWaiters = conf.getPoolMaxWaiters();
+
+        if (waiters.incrementAndGet() > maxWaiters && maxWaiters >= 0) {
+            waiters.decrementAndGet();
+            rejected.increment();
+            throw new OrientDbPoolExhaustedException(conf.getAlias(), "The " + conf.getPoolMax() +
+                    " connections of " + conf.getAlias() + " are in use and " + maxWaiters +
+                    " threads are already waiting for one.");
+        }
+
+        try {
+            if (timeout == 0) {
+                permits.acquire();
+            } else if (!permits.tryAcquire(start + TimeUnit.MILLISECONDS.toNanos(timeout) - System.nanoTime(),
+                    TimeUnit.NANOSECONDS)) {
+                timeouts.increment();
+                throw new OrientDbPoolExhaustedException(conf.getAlias(), "No connection of " +
+                        conf.getAlias() + " has been released within " + timeout + " ms.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OrientDbPoolExhaustedException(conf.getAlias(), "The wait for a connection of " +
+                    conf.getAlias() + " has been interrupted.");
+        } finally {
+            waiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * Give back the permit of the current thread, once its connection has been released to the pool or if it cannot
+     * be acquired.
+     */
+    void release() {
+        if (admitted.get() != null) {
+            admitted.remove();
+            permits.release();
+        }
+    }
+}
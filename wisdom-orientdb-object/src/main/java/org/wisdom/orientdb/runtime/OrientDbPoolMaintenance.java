@@ -0,0 +1,199 @@
+package org.wisdom.orientdb.runtime;
+
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
+import com.orientechnologies.orient.core.metadata.schema.OSchema;
+import com.orientechnologies.orient.core.storage.OStorage;
+import com.orientechnologies.orient.core.storage.OStorageProxy;
+import com.orientechnologies.orient.object.db.OObjectDatabaseTx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wisdom.orientdb.conf.WOrientConf;
+import org.wisdom.orientdb.metrics.OrientDbCounter;
+import org.wisdom.orientdb.metrics.OrientDbHistogram;
+import org.wisdom.orientdb.metrics.OrientDbMetricRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The warm-up and the periodic validation of the connection pool of a repository.
+ *
+ * The pool returns the connection already acquired by the current thread, the warm-up therefore opens each connection
+ * on its own thread and keeps them until all of them have been opened. The validation acquires and releases the idle
+ * connections one after the other, with the partitioned pool only those of the partition of the validation thread.
+ */
+final class OrientDbPoolMaintenance {
+    private final Logger logger = LoggerFactory.getLogger(OrientDbPoolMaintenance.class);
+
+    private final OrientDbObjectPool pool;
+    private final WOrientConf conf;
+
+    private final OrientDbHistogram warmUpTime;
+    private final OrientDbCounter validated;
+    private final OrientDbCounter evicted;
+
+    /**
+     * The thread of the validation, <code>null</code> if it is not scheduled.
+     */
+    private ScheduledExecutorService scheduler;
+
+    OrientDbPoolMaintenance(OrientDbObjectPool pool, WOrientConf conf, OrientDbMetricRegistry metrics) {
+        this.pool = pool;
+        this.conf = conf;
+        this.warmUpTime = metrics.histogram("pool.warmup");
+        this.validated = metrics.counter("pool.validated");
+        this.evicted = metrics.counter("pool.evicted");
+    }
+
+    /**
+     * Open {@link WOrientConf#getPoolMin()} connections, and load the schema, the security and the metadata of the
+     * entity classes on each of them. A connection which cannot be opened is reported, the pool opens it on demand.
+     *
+     * @param entities The entity classes of the repository.
+     */
+    void warmUp(final List<Class<?>> entities) {
+        final int size = conf.getPoolMin();
+
+        if (size < 1) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        final AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(size, runnable -> {
+            Thread thread = new Thread(runnable, "orientdb-" + conf.getAlias() + "-warmup-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        final CountDownLatch opened = new CountDownLatch(size);
+        List<Future<?>> connections = new ArrayList<>(size);
+
+        try {
+            for (int i = 0; i < size; i++) {
+                connections.add(executor.submit(() -> {
+                    OObjectDatabaseTx db = null;
+
+                    try {
+                        db = pool.acquire();
+                        load(db, entities);
+                    } finally {
+                        //Keep the connection until all of them have been opened
+                        opened.countDown();
+                        try {
+                            opened.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+
+                        if (db != null) {
+                            db.close();
+                        }
+                        ODatabaseRecordThreadLocal.INSTANCE.remove();
+                    }
+                }));
+            }
+
+            for (Future<?> connection : connections) {
+                connection.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.warn("Cannot warm up the pool of {}, the connections are opened on demand.", conf.getAlias(),
+                    e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        warmUpTime.record(System.nanoTime() - start);
+        logger.debug("The pool of {} has been warmed up with {} connections.", conf.getAlias(), size);
+    }
+
+    private void load(OObjectDatabaseTx db, List<Class<?>> entities) {
+        db.getUser();
+        OSchema schema = db.getMetadata().getSchema();
+
+        for (Class<?> entity : entities) {
+            schema.getClass(entity.getSimpleName());
+            db.getEntityManager().getEntityClass(entity.getSimpleName());
+        }
+    }
+
+    /**
+     * Schedule the validation of the idle connections every {@link WOrientConf#getPoolValidation()} ms, if it is set.
+     */
+    synchronized void start() {
+        long interval = conf.getPoolValidation();
+
+        if (interval == 0 || scheduler != null) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "orientdb-" + conf.getAlias() + "-validation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::validate, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run a round trip to the storage on each idle connection. The storage of a broken remote connection is closed,
+     * so that the pool opens it again before it is acquired by a request.
+     */
+    void validate() {
+        int idle = pool.getAvailable();
+
+        for (int i = 0; i < idle && pool.getAvailable() > 0; i++) {
+            OObjectDatabaseTx db;
+
+            try {
+                db = pool.acquire();
+            } catch (RuntimeException e) {
+                logger.warn("Cannot acquire a connection of {} to validate it.", conf.getAlias(), e);
+                ODatabaseRecordThreadLocal.INSTANCE.remove();
+                return;
+            }
+
+            try {
+                ODatabaseDocumentTx underlying = db.getUnderlying();
+
+                try {
+                    underlying.countClusterElements(underlying.getDefaultClusterId());
+                    validated.increment();
+                } catch (RuntimeException e) {
+                    evicted.increment();
+                    logger.warn("A connection of {} is broken, it is opened again on its next use.", conf.getAlias(),
+                            e);
+
+                    //A local storage is shared by all the connections, it is never closed
+                    OStorage storage = underlying.getStorage();
+                    if (storage instanceof OStorageProxy) {
+                        storage.close(true, false);
+                    }
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Cannot validate a connection of {}.", conf.getAlias(), e);
+            } finally {
+                db.close();
+                ODatabaseRecordThreadLocal.INSTANCE.remove();
+            }
+        }
+    }
+
+    synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package org.wisdom.orientdb.runtime;
+
+import com.orientechnologies.orient.core.command.OCommandResultListener;
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.query.OSQLAsynchQuery;
+import com.orientechnologies.orient.object.db.OObjectDatabaseTx;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A cold publisher of the result of an OSQL query, each subscription runs the query with an {@link OSQLAsynchQuery}
+ * on the stream executor of the repository, apart from the asynchronous crud operations.
+ *
+ * The query listener waits for the demand of the subscriber before converting each record, so that only one record at
+ * a time is held, whatever the size of the result. The local cache of the connection is cleared every
+ * {@link org.wisdom.orientdb.conf.WOrientConf#getPageSize()} records for the same reason. The subscription keeps its
+ * connection until the result has been entirely consumed or the subscription has been cancelled.
+ *
+ * @param <T> The type of the entities.
+ */
+final class OrientDbQueryPublisher<T> implements Publisher<T> {
+    private final Logger logger = LoggerFactory.getLogger(OrientDbQueryPublisher.class);
+
+    private final OrientDbRepositoryImpl repo;
+    private final String sql;
+    private final Object[] args;
+
+    OrientDbQueryPublisher(OrientDbRepositoryImpl repo, String sql, Object... args) {
+        this.repo = repo;
+        this.sql = sql;
+        this.args = args;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("The subscriber cannot be null.");
+        }
+
+        QuerySubscription subscription = new QuerySubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+
+        try {
+            repo.getStreamExecutor().execute(subscription);
+        } catch (RejectedExecutionException e) {
+            subscriber.onError(e);
+        }
+    }
+
+    private final class QuerySubscription implements Subscription, Runnable, OCommandResultListener {
+        private final Subscriber<? super T> subscriber;
+
+        private final Lock lock = new ReentrantLock();
+        private final Condition demanded = lock.newCondition();
+
+        private long demand = 0;
+        private boolean cancelled = false;
+
+        /**
+         * An error detected out of the query, signaled once the query has returned.
+         */
+        private Throwable error;
+
+        private OObjectDatabaseTx db;
+        private long count = 0;
+
+        private QuerySubscription(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            lock.lock();
+            try {
+                if (cancelled) {
+                    return;
+                }
+
+                if (n <= 0) {
+                    //Signaled by the query thread, which is the only one to signal the subscriber
+                    error = new IllegalArgumentException("The number of requested elements must be " +
+                            "strictly positive, it was " + n + ".");
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+                demanded.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            lock.lock();
+            try {
+                cancelled = true;
+                demanded.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            Throwable failure = null;
+
+            try {
+                db = repo.acquireDb();
+                db.query(new OSQLAsynchQuery<ODocument>(sql, this), args);
+            } catch (Throwable e) {
+                failure = e;
+            } finally {
+                if (db != null) {
+                    db.close();
+                }
+                ODatabaseRecordThreadLocal.INSTANCE.remove();
+            }
+
+            lock.lock();
+            try {
+                if (error != null) {
+                    failure = error;
+                } else if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+            } finally {
+                lock.unlock();
+            }
+
+            if (failure != null) {
+                subscriber.onError(failure);
+            } else {
+                subscriber.onComplete();
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean result(Object record) {
+            if (!awaitDemand()) {
+                return false;
+            }
+
+            T entity = db.detach(db.getUserObjectByRecord((OIdentifiable) record, null), true);
+
+            if (++count % repo.getConf().getPageSize() == 0) {
+                db.getUnderlying().getLocalCache().clear();
+            }
+
+            try {
+                subscriber.onNext(entity);
+                return true;
+            } catch (RuntimeException e) {
+                logger.warn("The subscriber of {} has failed, its subscription is cancelled.", sql, e);
+                cancel();
+                return false;
+            }
+        }
+
+        @Override
+        public void end() {
+            //The subscriber is completed once the query has returned
+        }
+
+        @Override
+        public Object getResult() {
+            return null;
+        }
+
+        /**
+         * Wait until the subscriber requests an element or cancels its subscription.
+         *
+         * @return <code>true</code> if an element can be sent.
+         */
+        private boolean awaitDemand() {
+            lock.lock();
+            try {
+                while (demand == 0 && !cancelled && error == null) {
+                    demanded.await();
+                }
+
+                if (cancelled || error != null) {
+                    return false;
+                }
+
+                if (demand != Long.MAX_VALUE) {
+                    demand--;
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = e;
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
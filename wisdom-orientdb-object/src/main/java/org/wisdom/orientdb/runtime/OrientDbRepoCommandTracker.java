@@ -11,8 +11,18 @@ import org.osgi.util.tracker.ServiceTrackerCustomizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wisdom.api.configuration.ApplicationConfiguration;
+import org.wisdom.orientdb.conf.WOrientConf;
+import org.wisdom.orientdb.metrics.OrientDbMetrics;
 import org.wisdom.orientdb.object.OrientDbRepoCommand;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * @author barjo
  */
@@ -22,12 +32,22 @@ class OrientDbRepoCommandTracker implements ServiceTrackerCustomizer<OrientDbRep
     @Requires
     private ApplicationConfiguration appConf;
 
+    @Requires
+    private OrientDbMetrics metrics;
+
     private final BundleContext context;
 
     private ServiceTracker<OrientDbRepoCommand,OrientDbRepositoryImpl> tracker;
 
     private final Logger logger = LoggerFactory.getLogger(OrientDbRepoCommandTracker.class);
 
+    /**
+     * The threads starting the {@link WOrientConf.Startup#PARALLEL} repositories, and their pending startups.
+     */
+    private ExecutorService startupExecutor;
+
+    private final Map<OrientDbRepositoryImpl, Future<?>> startups = new ConcurrentHashMap<>();
+
 
     private OrientDbRepoCommandTracker(BundleContext context) {
         this.context = context;
@@ -35,6 +55,13 @@ class OrientDbRepoCommandTracker implements ServiceTrackerCustomizer<OrientDbRep
 
     @Validate
     private void start(){
+        final AtomicInteger count = new AtomicInteger();
+        startupExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "orientdb-startup-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
         tracker = new ServiceTracker<>(context,OrientDbRepoCommand.class,this);
         tracker.open(true);
     }
@@ -42,13 +69,38 @@ class OrientDbRepoCommandTracker implements ServiceTrackerCustomizer<OrientDbRep
     @Invalidate
     private void stop(){
         tracker.close();
+        startupExecutor.shutdown();
     }
 
     @Override
     public OrientDbRepositoryImpl addingService(ServiceReference<OrientDbRepoCommand> sref) {
-        OrientDbRepoCommand creator = context.getService(sref);
-        OrientDbRepositoryImpl  repo = new OrientDbRepositoryImpl(creator);
+        final OrientDbRepoCommand creator = context.getService(sref);
+        final OrientDbRepositoryImpl  repo = new OrientDbRepositoryImpl(creator, metrics);
+
+        switch (repo.getConf().getStartup()) {
+            case LAZY:
+                //Register all Crud service, the database is opened on first use
+                logger.info("Adding Crud service for OrientDB db <{}> - {}, the database is opened on first use",
+                        repo.getConf().getAlias(),creator.getEntityClass());
+                repo.registerAllCrudLazily(context, () -> tryAcquireOrCreateIfNotProd(repo));
+                break;
+            case PARALLEL:
+                startups.put(repo, startupExecutor.submit(() -> {
+                    try {
+                        startRepository(repo, creator);
+                    } catch (RuntimeException e) {
+                        logger.error("Cannot start OrientDBRepository for db {}",creator.getConf().getAlias(),e);
+                    }
+                }));
+                break;
+            default:
+                startRepository(repo, creator);
+        }
+
+        return repo;
+    }
 
+    private void startRepository(OrientDbRepositoryImpl repo, OrientDbRepoCommand creator) {
         try {
             tryAcquireOrCreateIfNotProd(repo);
         } catch (Exception e) {
@@ -58,17 +110,40 @@ class OrientDbRepoCommandTracker implements ServiceTrackerCustomizer<OrientDbRep
         //Register all Crud service
         logger.info("Adding Crud service for OrientDB db <{}> - {}",repo.getConf().getAlias(),creator.getEntityClass());
         repo.registerAllCrud(context);
-        return repo;
     }
 
+    /**
+     * Wait for the end of the startup of a {@link WOrientConf.Startup#PARALLEL} repository.
+     */
+    private void awaitStartup(OrientDbRepositoryImpl repo) {
+        Future<?> startup = startups.get(repo);
+
+        if (startup == null) {
+            return;
+        }
+
+        try {
+            startup.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.debug("The startup of OrientDBRepository {} has failed.", repo.getConf().getAlias(), e);
+        }
+    }
 
     @Override
     public void modifiedService(ServiceReference<OrientDbRepoCommand> sref, OrientDbRepositoryImpl repo) {
+        awaitStartup(repo);
 
+        //The entity classes of the command have changed, only their Crud services are re-registered
+        repo.updateAllCrud(context);
     }
 
     @Override
     public void removedService(ServiceReference<OrientDbRepoCommand> sref, OrientDbRepositoryImpl repo) {
+        awaitStartup(repo);
+        startups.remove(repo);
+
         repo.destroy(); //Destroy the repository linked to this OrientDbRepoCommand
         logger.info("Removing Crud service for OrientDB db <{}> - {}",repo.getConf().getAlias());
         context.ungetService(sref);
@@ -5,8 +5,15 @@ import com.orientechnologies.orient.object.db.OObjectDatabasePool;
 import com.orientechnologies.orient.object.db.OObjectDatabaseTx;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.wisdom.api.model.Crud;
 import org.wisdom.orientdb.conf.WOrientConf;
+import org.wisdom.orientdb.metrics.InMemoryOrientDbMetrics;
+import org.wisdom.orientdb.metrics.OrientDbHistogram;
+import org.wisdom.orientdb.metrics.OrientDbMetricRegistry;
+import org.wisdom.orientdb.metrics.OrientDbMetrics;
+import org.wisdom.orientdb.object.AsyncOrientDbCrud;
 import org.wisdom.orientdb.object.OrientDbCrud;
 import org.wisdom.orientdb.object.OrientDbRepoCommand;
 import org.wisdom.orientdb.object.OrientDbRepository;
@@ -14,26 +21,120 @@ import org.wisdom.orientdb.object.OrientDbRepository;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Dictionary;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implementation of the OrientDbRepository.
  *
  */
 class OrientDbRepositoryImpl implements OrientDbRepository {
-    private final OObjectDatabasePool server;
+    private final OrientDbObjectPool server;
     private final OrientDbRepoCommand repoCmd;
 
-    private final Collection<ServiceRegistration> registrations = new ArrayList<>();
+    /**
+     * The transaction manager shared by all the crud services of this repository.
+     */
+    private final OrientDbTransactionManager txManager;
+
+    /**
+     * The metrics of this repository, and the time spent waiting for a connection from the pool. Its gauges are
+     * unregistered once it is destroyed.
+     */
+    private final OrientDbRepositoryMetrics metrics;
+
+    private final OrientDbHistogram poolWait;
+
+    /**
+     * The bound of the wait for a connection, once the pool is exhausted.
+     */
+    private final OrientDbPoolAdmission admission;
+
+    /**
+     * The parsed named statements of the repository command.
+     */
+    private final OrientDbStatementCache statements;
+
+    /**
+     * The warm-up and the validation of the pool.
+     */
+    private final OrientDbPoolMaintenance maintenance;
+
+    /**
+     * The executor of the AsyncOrientDbCrud services, created with the first of them.
+     */
+    private OrientDbAsyncExecutor asyncExecutor;
+
+    /**
+     * The threads of the stream subscriptions, created with the first of them.
+     */
+    private ThreadPoolExecutor streamExecutor;
+
+    /**
+     * The pool of the parallel scans, created with the first of them.
+     */
+    private ForkJoinPool scanPool;
 
-    private final Collection<OrientDbCrud<?,?>> crudServices = new ArrayList<>();
+    /**
+     * The crud services and their registrations, by entity class, guarded by <code>crudLock</code>. They are changed by
+     * the bundle thread and read by the threads of the requests.
+     */
+    private final Map<Class<?>, Collection<ServiceRegistration>> registrations = new LinkedHashMap<>();
+
+    private final Map<Class<?>, OrientDbCrudService<?>> crudServices = new LinkedHashMap<>();
+
+    private final Object crudLock = new Object();
+
+    /**
+     * The live queries which invalidate the second level caches, <code>null</code> if not enabled.
+     */
+    private OrientDbLiveInvalidation liveInvalidation;
+
+    /**
+     * The opening of the database deferred to the first use of a {@link WOrientConf.Startup#LAZY} repository,
+     * <code>null</code> once it has been opened.
+     */
+    private volatile Runnable lazyOpen;
+    private boolean opening = false;
+    private final Object openLock = new Object();
+
+    private final Logger logger = LoggerFactory.getLogger(OrientDbRepositoryImpl.class);
 
     OrientDbRepositoryImpl(OrientDbRepoCommand repoCmd){
-        this.server = new OObjectDatabasePool(repoCmd.getConf().getUrl(),
-                repoCmd.getConf().getUser(),
-                repoCmd.getConf().getPass());
-        //default pool size
-        this.server.setup(repoCmd.getConf().getPoolMin(),repoCmd.getConf().getPoolMax());
+        this(repoCmd, new InMemoryOrientDbMetrics());
+    }
+
+    OrientDbRepositoryImpl(OrientDbRepoCommand repoCmd, OrientDbMetrics metrics){
+        WOrientConf conf = repoCmd.getConf();
+
+        //The workers of a parallel scan hold their own connections while the other requests keep using the pool
+        if (conf.getScanParallelism() > 1 && conf.getScanParallelism() >= conf.getPoolMax()) {
+            throw new IllegalArgumentException(WOrientConf.ORIENTDB_SCANPARALLELISM + " of " + conf.getAlias() +
+                    " must be lower than " + WOrientConf.ORIENTDB_POOLMAX + ", it is " + conf.getScanParallelism() +
+                    " for a pool of " + conf.getPoolMax() + " connections.");
+        }
+
+        this.server = OrientDbObjectPool.create(repoCmd.getConf());
         this.repoCmd = repoCmd;
+        this.metrics = new OrientDbRepositoryMetrics(metrics.getRegistry(repoCmd.getConf().getAlias()));
+        this.poolWait = this.metrics.histogram("pool.wait");
+        this.txManager = new OrientDbTransactionManager(this);
+        this.statements = new OrientDbStatementCache(this.metrics);
+        this.maintenance = new OrientDbPoolMaintenance(server, repoCmd.getConf(), this.metrics);
+        this.admission = new OrientDbPoolAdmission(server, repoCmd.getConf(), this.metrics);
+
+        final OrientDbObjectPool pool = server;
+        this.metrics.gauge("pool.max", () -> repoCmd.getConf().getPoolMax());
+        this.metrics.gauge("pool.created", pool::getCreated);
+        this.metrics.gauge("pool.available", pool::getAvailable);
+        this.metrics.gauge("pool.used", () -> pool.getCreated() - pool.getAvailable());
     }
 
     /**
@@ -48,50 +149,347 @@ class OrientDbRepositoryImpl implements OrientDbRepository {
      * Acquire {@link OObjectDatabaseTx} instance linked to this repository.
      *
      * @return An active {@link OObjectDatabaseTx} instance from this repository pool.
+     * @throws org.wisdom.orientdb.object.OrientDbPoolExhaustedException if the pool is exhausted and the connection
+     * cannot be waited for, according to {@link WOrientConf#getPoolMaxWaiters()} and
+     * {@link WOrientConf#getPoolAcquireTimeout()}.
      */
     @Override
     public OObjectDatabaseTx acquireDb() {
-        OObjectDatabaseTx db = server.acquire();
+        if (lazyOpen != null) {
+            openLazily();
+        }
+
+        long start = System.nanoTime();
+        admission.await(start);
+        OObjectDatabaseTx db;
+
+        try {
+            db = server.acquire();
+        } catch (RuntimeException e) {
+            admission.release();
+            throw e;
+        }
+
+        poolWait.record(System.nanoTime() - start);
         ODatabaseRecordThreadLocal.INSTANCE.set(db.getUnderlying());
         return db;
     }
 
+    /**
+     * Open a connection to this repository database which is not managed by the pool.
+     * It is bound to the local thread and must be closed once done.
+     *
+     * @return A new {@link OObjectDatabaseTx} instance.
+     */
+    OObjectDatabaseTx openDb() {
+        OObjectDatabaseTx db = new OObjectDatabaseTx(getConf().getUrl()).open(getConf().getUser(), getConf().getPass());
+        ODatabaseRecordThreadLocal.INSTANCE.set(db.getUnderlying());
+        return db;
+    }
+
+    /**
+     * @return The transaction manager shared by all the crud services of this repository.
+     */
+    OrientDbTransactionManager getTransactionManager() {
+        return txManager;
+    }
+
+    /**
+     * @return The metrics of this repository, registered under its configuration alias.
+     */
+    OrientDbMetricRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The parsed statements of this repository.
+     */
+    OrientDbStatementCache getStatementCache() {
+        if (lazyOpen != null) {
+            openLazily(); //The named statements are parsed once the database is open
+        }
+
+        return statements;
+    }
+
+    /**
+     * @return The bounded executor of the AsyncOrientDbCrud services of this repository.
+     */
+    synchronized Executor getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            asyncExecutor = OrientDbAsyncExecutor.create(getConf(), metrics);
+        }
+
+        return asyncExecutor;
+    }
+
+    /**
+     * A subscription keeps its thread and its connection while it waits for the demand of its subscriber, the
+     * subscriptions therefore run on their own threads, up to {@link WOrientConf#getPoolMax()} at once, so that they
+     * do not starve the asynchronous crud operations.
+     *
+     * @return The executor of the stream subscriptions of this repository.
+     */
+    synchronized Executor getStreamExecutor() {
+        if (streamExecutor == null) {
+            final String prefix = "orientdb-" + getConf().getAlias() + "-stream-";
+            final AtomicInteger count = new AtomicInteger();
+            streamExecutor = new ThreadPoolExecutor(0, getConf().getPoolMax(), 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), runnable -> {
+                        Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+
+            final ThreadPoolExecutor executor = streamExecutor;
+            metrics.gauge("stream.active", executor::getActiveCount);
+        }
+
+        return streamExecutor;
+    }
+
+    /**
+     * @return The fork join pool of the parallel scans of this repository, of
+     * {@link WOrientConf#getScanParallelism()} workers.
+     */
+    synchronized ForkJoinPool getScanPool() {
+        if (scanPool == null) {
+            scanPool = new ForkJoinPool(getConf().getScanParallelism());
+        }
+
+        return scanPool;
+    }
+
     void registerAllCrud(BundleContext context){
+        initDb();
+
+        synchronized (crudLock){
+            for(Class<?> entity: repoCmd.getEntityClass()){
+                registerCrud(context, entity);
+            }
+        }
+
+        subscribeLiveInvalidation();
+    }
+
+    /**
+     * Register the crud services at once, the database is opened and initialized by the first connection acquired
+     * from this repository, or the first named statement run.
+     *
+     * @param context The context in which the crud services are registered.
+     * @param open Check that the database is available, called before its initialization.
+     */
+    void registerAllCrudLazily(BundleContext context, final Runnable open){
+        synchronized (crudLock){
+            for(Class<?> entity: repoCmd.getEntityClass()){
+                registerCrud(context, entity);
+            }
+        }
+
+        lazyOpen = () -> {
+            open.run();
+            initDb();
+            subscribeLiveInvalidation();
+        };
+    }
+
+    private void openLazily(){
+        synchronized (openLock){
+            //The connections acquired while opening the database do not wait for it
+            if(lazyOpen == null || opening){
+                return;
+            }
+
+            opening = true;
+            try {
+                lazyOpen.run();
+                lazyOpen = null;
+            } finally {
+                opening = false;
+            }
+        }
+    }
+
+    private void initDb(){
         OObjectDatabaseTx db = server.acquire();
 
-        repoCmd.init(db); //Call the OrientDbRepoCommand init callback
+        try {
+            repoCmd.init(db); //Call the OrientDbRepoCommand init callback
+
+            //Parse the named statements once, an invalid statement prevents the repository from starting
+            for(Map.Entry<String,String> statement : repoCmd.getStatements().entrySet()){
+                statements.register(statement.getKey(), statement.getValue());
+            }
+        } finally {
+            db.close();
+        }
+
+        //Open the connections once the entity classes have been registered
+        if(getConf().getPoolWarmUp()){
+            maintenance.warmUp(repoCmd.getEntityClass());
+        }
+        maintenance.start();
+    }
+
+    /**
+     * Synchronize the crud services with the entity classes of the repository command, once they have changed.
+     * The services of the removed classes are unregistered and those of the added classes registered, an entity class
+     * loaded again by an updated bundle is a different class, its services are replaced. The pool, the statements and
+     * the services of the unchanged classes are kept.
+     *
+     * @param context The context in which the crud services are registered.
+     */
+    void updateAllCrud(BundleContext context){
+        List<Class<?>> entities = repoCmd.getEntityClass();
+        List<Class<?>> added = new ArrayList<>();
+        List<Class<?>> removed = new ArrayList<>();
+
+        synchronized (crudLock){
+            for(Class<?> entity: entities){
+                if(!crudServices.containsKey(entity)){
+                    added.add(entity);
+                }
+            }
+
+            for(Class<?> entity: crudServices.keySet()){
+                if(!entities.contains(entity)){
+                    removed.add(entity);
+                }
+            }
+
+            if(added.isEmpty() && removed.isEmpty()){
+                return;
+            }
+
+            for(Class<?> entity: removed){
+                for(ServiceRegistration reg: registrations.remove(entity)){
+                    reg.unregister();
+                }
+                crudServices.remove(entity);
+            }
+        }
+
+        synchronized (openLock){
+            //A database which has not been opened yet is initialized with all the entities
+            if(lazyOpen == null){
+                OObjectDatabaseTx db = server.acquire();
 
-        for(Class entity: repoCmd.getEntityClass()){
-            //Service properties
-            Dictionary prop = getConf().toDico();
-            prop.put(Crud.ENTITY_CLASS_PROPERTY,entity);
-            prop.put(Crud.ENTITY_CLASSNAME_PROPERTY,entity.getName());
+                try {
+                    repoCmd.update(db, added, removed); //Call the OrientDbRepoCommand update callback
+                } finally {
+                    db.close();
+                }
+            }
+        }
+
+        synchronized (crudLock){
+            for(Class<?> entity: added){
+                registerCrud(context, entity);
+            }
+        }
 
-            registrations.add(context.registerService(new String[]{Crud.class.getName(),OrientDbCrud.class.getName()},
-                    new OrientDbCrudService(this,entity),
-                    prop));
+        //Subscribe to the changes of the new entity classes
+        if(liveInvalidation != null){
+            liveInvalidation.close();
+            liveInvalidation = null;
+            subscribeLiveInvalidation();
         }
 
-        db.close();
+        logger.info("Updated the Crud services of OrientDB db <{}>, added {}, removed {}", getConf().getAlias(),
+                added, removed);
+    }
+
+    /**
+     * Register the crud services of an entity class, <code>crudLock</code> must be held.
+     */
+    private void registerCrud(BundleContext context, Class<?> entity){
+        //Service properties
+        Dictionary prop = getConf().toDico();
+        prop.put(Crud.ENTITY_CLASS_PROPERTY,entity);
+        prop.put(Crud.ENTITY_CLASSNAME_PROPERTY,entity.getName());
+
+        OrientDbCrudService crud = new OrientDbCrudService(this,entity);
+        crudServices.put(entity, crud);
+
+        Collection<ServiceRegistration> regs = new ArrayList<>(2);
+        regs.add(context.registerService(new String[]{Crud.class.getName(),OrientDbCrud.class.getName()},
+                crud,
+                prop));
+
+        regs.add(context.registerService(AsyncOrientDbCrud.class.getName(),
+                new OrientDbAsyncCrudService(crud,txManager,getAsyncExecutor()),
+                prop));
+        registrations.put(entity, regs);
+    }
+
+    private void subscribeLiveInvalidation(){
+        //Evict the records changed by the other clients of the database from the caches
+        if(getConf().getCacheLive() && (getConf().getCacheSize() > 0 || getConf().getQueryCacheSize() > 0
+                || getConf().getCountCacheTtl() > 0)){
+            List<OrientDbCrudService<?>> cruds;
+
+            synchronized (crudLock){
+                cruds = new ArrayList<>(crudServices.values());
+            }
+
+            liveInvalidation = OrientDbLiveInvalidation.subscribe(this, cruds);
+        }
     }
 
     void destroy(){
-        OObjectDatabaseTx db = server.acquire();
+        //A database which has never been opened is not initialized
+        OObjectDatabaseTx db = lazyOpen == null ? server.acquire() : null;
+        lazyOpen = null;
+
+        synchronized (crudLock){
+            for(Collection<ServiceRegistration> regs: registrations.values()){
+                for(ServiceRegistration reg: regs){
+                    reg.unregister();
+                }
+            }
+
+            registrations.clear();
+            crudServices.clear();
+        }
+
+        if(db != null){
+            repoCmd.destroy(db); //Call the OrientDbRepoCommand destroy callback
+        }
 
-        for(ServiceRegistration reg: registrations){
-            reg.unregister();
+        statements.clear();
+
+        if(liveInvalidation != null){
+            liveInvalidation.close();
+            liveInvalidation = null;
         }
 
-        repoCmd.destroy(db); //Call the OrientDbRepoCommand destroy callback
+        synchronized (this){
+            if(asyncExecutor != null){
+                asyncExecutor.shutdown();
+                asyncExecutor = null;
+            }
+
+            if(streamExecutor != null){
+                streamExecutor.shutdown();
+                streamExecutor = null;
+            }
 
-        registrations.clear();
+            if(scanPool != null){
+                scanPool.shutdown();
+                scanPool = null;
+            }
+        }
 
+        maintenance.close();
         server.close();
+        metrics.removeGauges();
     }
 
     @Override
     public Collection<Crud<?, ?>> getCrudServices() {
-        return (Collection) crudServices;
+        synchronized (crudLock){
+            return new ArrayList<Crud<?, ?>>(crudServices.values());
+        }
     }
 
     @Override
@@ -109,8 +507,19 @@ class OrientDbRepositoryImpl implements OrientDbRepository {
         return OObjectDatabasePool.class;
     }
 
+    /**
+     * @return The object database pool of this repository.
+     * @throws IllegalStateException if the repository uses the partitioned pool, use {@link #acquireDb()} instead.
+     */
     @Override
     public OObjectDatabasePool get() {
-        return server;
+        OObjectDatabasePool pool = server.getObjectPool();
+
+        if(pool == null){
+            throw new IllegalStateException("The repository " + getConf().getAlias() + " uses the " +
+                    getConf().getPoolType() + " pool, connections must be acquired with acquireDb().");
+        }
+
+        return pool;
     }
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+package org.wisdom.orientdb.runtime;
+
+import org.wisdom.orientdb.metrics.OrientDbCounter;
+import org.wisdom.orientdb.metrics.OrientDbHistogram;
+import org.wisdom.orientdb.metrics.OrientDbMetricRegistry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+/**
+ * The view of an {@link OrientDbRepositoryImpl} on the registry of its alias. It keeps track of the gauges registered
+ * by the repository, its pool and its crud services, so that they can be unregistered once it is destroyed.
+ *
+ * The registry outlives the repository, the counters and histograms are kept in it.
+ */
+final class OrientDbRepositoryMetrics implements OrientDbMetricRegistry {
+    private final OrientDbMetricRegistry registry;
+
+    private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    OrientDbRepositoryMetrics(OrientDbMetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public String getAlias() {
+        return registry.getAlias();
+    }
+
+    @Override
+    public OrientDbCounter counter(String name) {
+        return registry.counter(name);
+    }
+
+    @Override
+    public OrientDbHistogram histogram(String name) {
+        return registry.histogram(name);
+    }
+
+    @Override
+    public void gauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+        registry.gauge(name, gauge);
+    }
+
+    @Override
+    public void removeGauge(String name, LongSupplier gauge) {
+        gauges.remove(name, gauge);
+        registry.removeGauge(name, gauge);
+    }
+
+    /**
+     * Unregister all the gauges of the repository. The gauges registered since with the same name by another
+     * repository of the alias are kept.
+     */
+    void removeGauges() {
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            removeGauge(gauge.getKey(), gauge.getValue());
+        }
+    }
+
+    @Override
+    public Map<String, OrientDbCounter> getCounters() {
+        return registry.getCounters();
+    }
+
+    @Override
+    public Map<String, OrientDbHistogram> getHistograms() {
+        return registry.getHistograms();
+    }
+
+    @Override
+    public Map<String, LongSupplier> getGauges() {
+        return registry.getGauges();
+    }
+}
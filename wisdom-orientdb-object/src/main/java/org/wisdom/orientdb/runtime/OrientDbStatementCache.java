@@ -0,0 +1,158 @@
+package org.wisdom.orientdb.runtime;
+
+import com.orientechnologies.orient.core.command.OCommandExecutor;
+import com.orientechnologies.orient.core.command.OCommandManager;
+import com.orientechnologies.orient.core.sql.OCommandSQL;
+import org.wisdom.orientdb.metrics.OrientDbHistogram;
+import org.wisdom.orientdb.metrics.OrientDbMetricRegistry;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The named OSQL statements of a repository, and the classification of the other statements.
+ *
+ * The named statements of the {@link org.wisdom.orientdb.object.OrientDbRepoCommand} are parsed once at startup by the
+ * OrientDB SQL executor of their text, bound to the database of the current thread, which validates their syntax and
+ * their targets and tells whether they are idempotent (a query) or a command. They are never evicted.
+ *
+ * The other statements are not parsed on this side of the connection, OrientDB 2.1 parses the text of each request it
+ * runs and cannot reuse a parsed executor: they are classified at each use by their first keyword, a
+ * <code>select</code> or a <code>traverse</code> being a query.
+ */
+final class OrientDbStatementCache {
+    private static final Set<String> QUERY_KEYWORDS = new HashSet<>(Arrays.asList("select", "traverse"));
+
+    private final Map<String, Statement> named = new ConcurrentHashMap<>();
+
+    private final OrientDbHistogram parseTime;
+
+    /**
+     * @param metrics The metrics of the repository.
+     */
+    OrientDbStatementCache(OrientDbMetricRegistry metrics) {
+        this.parseTime = metrics.histogram("statement.parse");
+        metrics.gauge("statement.size", named::size);
+    }
+
+    /**
+     * Parse and keep a named statement, the database must be bound to the current thread.
+     *
+     * @throws IllegalArgumentException if the statement cannot be parsed.
+     */
+    void register(String name, String sql) {
+        try {
+            named.put(name, parse(normalize(sql)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("The statement " + name + " is invalid: " + sql, e);
+        }
+    }
+
+    /**
+     * @return The named statement.
+     * @throws IllegalArgumentException if there is no statement with this name.
+     */
+    Statement getNamed(String name) {
+        Statement statement = named.get(name);
+
+        if (statement == null) {
+            throw new IllegalArgumentException("There is no statement named " + name + ", the statements are " +
+                    named.keySet());
+        }
+
+        return statement;
+    }
+
+    void clear() {
+        named.clear();
+    }
+
+    private Statement parse(String text) {
+        long start = System.nanoTime();
+        OCommandSQL request = new OCommandSQL(text);
+        OCommandExecutor executor = OCommandManager.instance().getExecutor(request);
+        executor.parse(request);
+        parseTime.record(System.nanoTime() - start);
+        return new Statement(text, executor.isIdempotent());
+    }
+
+    /**
+     * @return <code>true</code> if the OSQL text starts with a keyword of a query, a statement which is not recognized
+     * is a command.
+     */
+    static boolean isQuery(String sql) {
+        int start = 0;
+        while (start < sql.length() && Character.isWhitespace(sql.charAt(start))) {
+            start++;
+        }
+
+        int end = start;
+        while (end < sql.length() && !Character.isWhitespace(sql.charAt(end))) {
+            end++;
+        }
+
+        return QUERY_KEYWORDS.contains(sql.substring(start, end).toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Collapse the whitespaces of an OSQL text, outside of its quoted literals.
+     */
+    static String normalize(String sql) {
+        StringBuilder normalized = new StringBuilder(sql.length());
+        char quote = 0;
+        boolean space = false;
+
+        for (char c : sql.trim().toCharArray()) {
+            if (quote == 0 && Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+
+            if (space) {
+                normalized.append(' ');
+                space = false;
+            }
+
+            if (quote == 0 && (c == '\'' || c == '"')) {
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            }
+
+            normalized.append(c);
+        }
+
+        return normalized.toString();
+    }
+
+    /**
+     * A named statement, parsed at startup.
+     */
+    static final class Statement {
+        private final String text;
+        private final boolean idempotent;
+
+        private Statement(String text, boolean idempotent) {
+            this.text = text;
+            this.idempotent = idempotent;
+        }
+
+        /**
+         * @return The normalized text of the statement.
+         */
+        String getText() {
+            return text;
+        }
+
+        /**
+         * @return <code>true</code> if the statement is a query, which does not change any record.
+         */
+        boolean isIdempotent() {
+            return idempotent;
+        }
+    }
+}
@@ -1,95 +1,360 @@
 package org.wisdom.orientdb.runtime;
 
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.db.record.ORecordOperation;
+import com.orientechnologies.orient.core.record.ORecord;
 import com.orientechnologies.orient.object.db.OObjectDatabaseTx;
 import org.wisdom.api.model.InitTransactionException;
 import org.wisdom.api.model.RollBackHasCauseAnException;
 import org.wisdom.api.model.TransactionManager;
-import org.wisdom.orientdb.object.OrientDbRepository;
+import org.wisdom.orientdb.conf.WOrientConf;
+import org.wisdom.orientdb.metrics.OrientDbCounter;
+import org.wisdom.orientdb.object.OrientDbPoolExhaustedException;
+import org.wisdom.orientdb.object.OrientDbPropagation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Implementation of {@link TransactionManager} that delegates to the {@link OObjectDatabaseTx}.
- * Each transaction is associated with the current thread.
+ *
+ * There is one manager per repository, shared by all its crud services. The database acquired from the pool and the
+ * transaction state are bound to the current thread, so that the crud services can be used concurrently, and so that
+ * all the crud services of the repository use the same database within a transaction.
+ *
+ * Transactions can be nested, according to their {@link OrientDbPropagation}. {@link #begin()} uses
+ * {@link OrientDbPropagation#REQUIRED}.
  */
 class OrientDbTransactionManager implements TransactionManager{
 
-    private final OrientDbRepository repo;
+    private final OrientDbRepositoryImpl repo;
+
+    /**
+     * The database and transaction state of the current thread, for this repository.
+     */
+    private final ThreadLocal<Binding> binding = new ThreadLocal<>();
 
-    private OObjectDatabaseTx db;
+    private final OrientDbCounter commits;
 
+    private final OrientDbCounter rollbacks;
 
     /**
-     * Flag used in order to know if the instance is used during a transaction in the current thread.
+     * The permits of the connections opened out of the pool by the {@link OrientDbPropagation#REQUIRES_NEW}
+     * transactions, at most {@link WOrientConf#getPoolMax()} at once.
      */
-    private static final ThreadLocal<Boolean> transaction = new ThreadLocal<Boolean>(){
-        @Override
-        protected Boolean initialValue() {
-            return false;
-        }
-    };
-
+    private final Semaphore dedicated;
 
     OrientDbTransactionManager(OrientDbRepositoryImpl repo) {
         this.repo=repo;
-        transaction.set(false);
+        this.commits=repo.getMetrics().counter("tx.commit");
+        this.rollbacks=repo.getMetrics().counter("tx.rollback");
+
+        final int maxDedicated = repo.getConf().getPoolMax();
+        this.dedicated=new Semaphore(maxDedicated);
+        repo.getMetrics().gauge("tx.dedicated", () -> maxDedicated - dedicated.availablePermits());
     }
 
+    /**
+     * Return the database bound to the current thread, or acquire one from the pool and bind it.
+     * Each call must be followed by a call to {@link #releaseDb()}.
+     *
+     * @return The database bound to the current thread.
+     */
     OObjectDatabaseTx acquireDb(){
-        if(db == null || db.isClosed()){
-            db = repo.acquireDb();
+        Binding current = binding.get();
 
-            db.setLazyLoading(repo.getConf().getAutolazyloading());
+        if(current == null || current.db.isClosed()){
+            current = bind(repo.acquireDb(), current != null ? current.suspended : null);
+        } else {
+            //Another repository might have bound its database to the thread in between
+            ODatabaseRecordThreadLocal.INSTANCE.set(current.db.getUnderlying());
         }
 
-        return db;
+        current.depth++;
+        return current.db;
     }
 
+    /**
+     * Release the database bound to the current thread to the pool, once it is no longer used by the thread and if no
+     * transaction is running.
+     */
     void releaseDb(){
-        if(!transaction.get()){
-            db.close();
+        Binding current = binding.get();
+
+        if(current == null){
+            return;
+        }
+
+        current.depth--;
+
+        if(current.depth <= 0 && current.scopes.isEmpty()){
+            unbind(current);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the current thread holds a database of the repository, acquired, within a
+     * transaction, or suspended by a {@link OrientDbPropagation#REQUIRES_NEW} transaction.
+     */
+    boolean isBound(){
+        return binding.get() != null;
+    }
+
+    /**
+     * @return <code>true</code> if a transaction has been started in the current thread.
+     */
+    boolean isTransactionActive(){
+        Binding current = binding.get();
+        return current != null && !current.scopes.isEmpty();
+    }
+
+    /**
+     * Run the given task once the transaction of the current thread is complete, committed or rolled back, or right
+     * away if there is no transaction.
+     */
+    void afterCompletion(Runnable task){
+        if(!isTransactionActive()){
+            task.run();
+            return;
         }
+
+        binding.get().completionTasks.add(task);
     }
 
     @Override
     public void begin() throws InitTransactionException {
-        if (transaction.get()){
-            throw new InitTransactionException("The transaction has already been started in this thread.");
+        begin(OrientDbPropagation.REQUIRED);
+    }
+
+    /**
+     * Begin a transactional scope on the current thread.
+     *
+     * @param propagation How to behave if a transaction is already running on the thread.
+     */
+    void begin(OrientDbPropagation propagation) throws InitTransactionException {
+        Binding current = binding.get();
+
+        if(isTransactionActive() && propagation != OrientDbPropagation.REQUIRES_NEW){
+            //Join the running transaction
+            acquireDb();
+            current.scopes.push(new Scope(false,
+                    propagation == OrientDbPropagation.NESTED ? snapshot(current.db) : null));
+            return;
+        }
+
+        if(current != null && propagation == OrientDbPropagation.REQUIRES_NEW){
+            //Suspend the current binding, the pool would return the same connection
+            acquireDedicated();
+            try{
+                bind(repo.openDb(), current).dedicated = true;
+            }catch (Throwable t){
+                dedicated.release();
+                throw new InitTransactionException(t);
+            }
         }
 
+        OObjectDatabaseTx db = acquireDb();
+
         try{
-            acquireDb().begin(repo.getConf().getTxType());
-            transaction.set(true);
+            db.begin(repo.getConf().getTxType());
+            binding.get().scopes.push(new Scope(true, null));
         }catch (Throwable t){
+            releaseDb();
             throw new InitTransactionException(t);
         }
-
     }
 
+    /**
+     * Commit the current transactional scope. A scope which has joined an outer transaction is committed with it.
+     */
     @Override
     public void commit() throws Exception {
-        if(!transaction.get()){
+        if(!isTransactionActive()){
             throw new IllegalStateException("No transaction has been begin in this thread.");
         }
-        db.commit();
+
+        Binding current = binding.get();
+
+        if(!current.scopes.peek().owner){
+            return;
+        }
+
+        if(current.rollbackOnly){
+            //Rolled back by the rollback of the scope, or once it is closed
+            throw new IllegalStateException("The transaction has been marked as rollback only by an inner " +
+                    "transactional block, it cannot be committed.");
+        }
+
+        current.db.commit();
+        commits.increment();
     }
 
+    /**
+     * Rollback the current transactional scope. A scope which has joined an outer transaction marks it as rollback
+     * only, unless it is a {@link OrientDbPropagation#NESTED} scope that did not change the transaction.
+     */
     @Override
     public void rollback() throws RollBackHasCauseAnException {
-        if(!transaction.get()){
+        if(!isTransactionActive()){
             throw new RollBackHasCauseAnException("No transaction has been started in this thread.");
         }
 
+        Binding current = binding.get();
+        Scope scope = current.scopes.peek();
+
         try{
-            db.rollback();
+            if(scope.owner){
+                current.rollbackOnly = false;
+                current.db.rollback();
+                rollbacks.increment();
+            } else if(scope.savepoint == null || !scope.savepoint.equals(snapshot(current.db))){
+                current.rollbackOnly = true;
+            }
         }catch (Throwable t){
             throw new RollBackHasCauseAnException(t);
         }
     }
 
+    /**
+     * End the current transactional scope. The database is released once the outermost scope is closed. A transaction
+     * marked as rollback only, and not rolled back yet, is rolled back once its scope is closed.
+     */
     @Override
     public void close() {
-        if(db!=null){
-            db.close();
+        Binding current = binding.get();
+
+        if(current == null){
+            return;
+        }
+
+        if(current.scopes.isEmpty()){
+            unbind(current);
+            return;
+        }
+
+        try{
+            if(current.scopes.pop().owner){
+                if(current.rollbackOnly){
+                    current.rollbackOnly = false;
+                    current.db.rollback();
+                    rollbacks.increment();
+                }
+
+                for(Runnable task : current.completionTasks){
+                    task.run();
+                }
+                current.completionTasks.clear();
+            }
+        }finally {
+            releaseDb();
+        }
+    }
+
+    /**
+     * Wait for the permit of a dedicated connection, within {@link WOrientConf#getPoolAcquireTimeout()}.
+     */
+    private void acquireDedicated() throws InitTransactionException {
+        WOrientConf conf = repo.getConf();
+        long timeout = conf.getPoolAcquireTimeout();
+
+        try {
+            if (timeout == 0) {
+                dedicated.acquire();
+            } else if (!dedicated.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new InitTransactionException(new OrientDbPoolExhaustedException(conf.getAlias(), "The " +
+                        conf.getPoolMax() + " dedicated connections of the REQUIRES_NEW transactions of " +
+                        conf.getAlias() + " are in use."));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InitTransactionException(e);
+        }
+    }
+
+    private Binding bind(OObjectDatabaseTx db, Binding suspended){
+        db.setLazyLoading(repo.getConf().getAutolazyloading());
+
+        Binding current = new Binding(db, suspended);
+        binding.set(current);
+        return current;
+    }
+
+    private void unbind(Binding current){
+        current.db.close();
+
+        if(current.dedicated){
+            dedicated.release();
+        }
+
+        if(current.suspended != null){
+            //Resume the suspended binding
+            binding.set(current.suspended);
+            ODatabaseRecordThreadLocal.INSTANCE.set(current.suspended.db.getUnderlying());
+        } else {
+            binding.remove();
+        }
+    }
+
+    /**
+     * Emulate a savepoint, by keeping a hash of the content of each record of the running transaction.
+     */
+    private static Map<String, Integer> snapshot(OObjectDatabaseTx db){
+        Map<String, Integer> snapshot = new HashMap<>();
+        Iterable<? extends ORecordOperation> entries = db.getUnderlying().getTransaction().getAllRecordEntries();
+
+        if(entries == null){
+            return snapshot;
+        }
+
+        for(ORecordOperation entry : entries){
+            ORecord record = entry.getRecord();
+            snapshot.put(record.getIdentity().toString(), 31 * entry.type + Arrays.hashCode(record.toStream()));
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * The database bound to a thread, with the number of pending {@link #acquireDb()} calls, the stack of
+     * transactional scopes and the tasks to run once the transaction is complete.
+     */
+    private static final class Binding {
+        private final OObjectDatabaseTx db;
+        private final Binding suspended;
+        private final Deque<Scope> scopes = new ArrayDeque<>();
+        private final List<Runnable> completionTasks = new ArrayList<>();
+        private int depth = 0;
+        private boolean rollbackOnly = false;
+
+        /**
+         * <code>true</code> if the database has been opened out of the pool, for a
+         * {@link OrientDbPropagation#REQUIRES_NEW} transaction.
+         */
+        private boolean dedicated = false;
+
+        private Binding(OObjectDatabaseTx db, Binding suspended) {
+            this.db = db;
+            this.suspended = suspended;
+        }
+    }
+
+    /**
+     * A transactional scope, the owner scope has begun the OrientDB transaction.
+     */
+    private static final class Scope {
+        private final boolean owner;
+        private final Map<String, Integer> savepoint;
+
+        private Scope(boolean owner, Map<String, Integer> savepoint) {
+            this.owner = owner;
+            this.savepoint = savepoint;
         }
-        transaction.set(false);
     }
 }
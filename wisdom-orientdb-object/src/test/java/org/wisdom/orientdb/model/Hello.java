@@ -42,6 +42,18 @@ public class Hello {
 
     private String name;
 
+    public enum Priority { LOW, MEDIUM, HIGH }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public void setPriority(Priority priority) {
+        this.priority = priority;
+    }
+
+    private Priority priority;
+
 
     //We override equals and hascode to test value injected in the proxy
 
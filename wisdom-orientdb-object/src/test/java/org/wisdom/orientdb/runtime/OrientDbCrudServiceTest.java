@@ -5,30 +5,59 @@
 
 package org.wisdom.orientdb.runtime;
 
-import com.orientechnologies.orient.core.metadata.security.OSecurity;
+import com.orientechnologies.orient.core.exception.OConcurrentModificationException;
 import com.orientechnologies.orient.core.sql.OCommandSQL;
+import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
 import com.orientechnologies.orient.object.db.OObjectDatabaseTx;
+import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
+import org.junit.ClassRule;
 import org.junit.Test;
-import org.junit.rules.TemporaryFolder;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 import org.wisdom.api.model.EntityFilter;
 import org.wisdom.api.model.HasBeenRollBackException;
+import org.wisdom.api.model.InitTransactionException;
 import org.wisdom.orientdb.conf.WOrientConf;
+import org.wisdom.orientdb.metrics.InMemoryOrientDbMetrics;
+import org.wisdom.orientdb.metrics.OrientDbMetricRegistry;
 import org.wisdom.orientdb.model.Hello;
+import org.wisdom.orientdb.object.AsyncOrientDbCrud;
+import org.wisdom.orientdb.object.OrientDbBatchResult;
 import org.wisdom.orientdb.object.OrientDbCrud;
-import org.wisdom.orientdb.object.OrientDbRepoCommand;
+import org.wisdom.orientdb.object.OrientDbCursor;
+import org.wisdom.orientdb.object.OrientDbFilter;
+import org.wisdom.orientdb.object.OrientDbPage;
+import org.wisdom.orientdb.object.OrientDbPageRequest;
+import org.wisdom.orientdb.object.OrientDbPoolExhaustedException;
+import org.wisdom.orientdb.object.OrientDbPropagation;
 import org.wisdom.orientdb.othermodel.Olleh;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.orientechnologies.orient.core.tx.OTransaction.TXTYPE.NOTX;
+import static com.orientechnologies.orient.core.tx.OTransaction.TXTYPE.OPTIMISTIC;
+import static org.wisdom.orientdb.object.OrientDbFilter.eq;
+import static org.wisdom.orientdb.object.OrientDbFilter.like;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
+import static org.junit.Assume.assumeTrue;
 
 /**
  * created: 5/9/14.
@@ -39,49 +68,32 @@ public class OrientDbCrudServiceTest {
     private static OrientDbCrud<Hello, String> crud;
     private static OrientDbCrud<Olleh, String> crudOther;
 
-    private final static TemporaryFolder folder = new TemporaryFolder();
+    @ClassRule
+    public static final OrientDbTestDatabase database = new OrientDbTestDatabase();
 
-    @BeforeClass
-    public static void setUp() throws IOException {
-        folder.create();
-        String url = "plocal:" + folder.getRoot().getAbsolutePath();
-
-        List<String> namespaces = Arrays.asList("org.wisdom.orientdb.model","org.wisdom.orientdb.othermodel");
-        final WOrientConf conf = new WOrientConf("test",url,"test","test",namespaces );
-        conf.setTxType(NOTX);
-        final List<Class<?>> entities = new ArrayList<>(2);
-        entities.add(Hello.class);
-        entities.add(Olleh.class);
-
-        try (
-            OObjectDatabaseTx db = new OObjectDatabaseTx(url).create();
-        ) {
-            OSecurity sm = db.getMetadata().getSecurity();
-            sm.createUser("test", "test", "admin");
-            db.getEntityManager().registerEntityClass(Hello.class);
-            db.getEntityManager().registerEntityClass(Olleh.class);
-        }
+    private static OrientDbRepositoryImpl sharedRepo;
+    private static OrientDbRepositoryImpl sharedRepoOther;
 
-        OrientDbRepoCommand repoCommand = new OrientDbRepoCommand() {
-            public WOrientConf getConf() {
-                return conf;
-            }
-            public List<Class<?>> getEntityClass() {
-                return entities;
-            }
-            public void init(OObjectDatabaseTx db) {
-            }
-            public void destroy(OObjectDatabaseTx db) {
-            }
-        };
+    @BeforeClass
+    public static void setUp() {
+        WOrientConf conf = database.conf("test");
+        List<Class<?>> entities = Arrays.<Class<?>>asList(Hello.class, Olleh.class);
 
-        crud = new OrientDbCrudService<>(new OrientDbRepositoryImpl(repoCommand),Hello.class);
-        crudOther = new OrientDbCrudService<>(new OrientDbRepositoryImpl(repoCommand),Olleh.class);
+        sharedRepo = new OrientDbRepositoryImpl(OrientDbTestDatabase.command(conf, entities));
+        sharedRepoOther = new OrientDbRepositoryImpl(OrientDbTestDatabase.command(conf, entities));
+        crud = new OrientDbCrudService<>(sharedRepo,Hello.class);
+        crudOther = new OrientDbCrudService<>(sharedRepoOther,Olleh.class);
     }
 
     @AfterClass
     public static void tearDown() {
-        folder.delete();
+        sharedRepo.destroy();
+        sharedRepoOther.destroy();
+    }
+
+    @After
+    public void destroyRepos() {
+        database.destroyRepos();
     }
 
     @Test
@@ -157,6 +169,1112 @@ public class OrientDbCrudServiceTest {
         assertThat(h.getName()).matches("Bob[0-9]");
     }
 
+    @Test
+    public void findAllWithOrientDbFilterShouldBePushedDown() {
+        long fallbacks = ((OrientDbCrudService<Hello>) crud).getFallbackScanCount();
+
+        for (int i = 0; i < 3; i++) {
+            Hello hello = new Hello();
+            hello.setName("Pushed" + i);
+            crud.save(hello);
+        }
+
+        Iterable<Hello> pushed = crud.findAll(OrientDbFilter.<Hello>like("name", "Pushed%"));
+        assertThat(pushed).hasSize(3);
+
+        Hello one = crud.findOne(OrientDbFilter.<Hello>eq("name", "Pushed1").or(eq("name", "Nobody")));
+        assertThat(one).isNotNull();
+        assertThat(one.getName()).isEqualTo("Pushed1");
+
+        assertThat(((OrientDbCrudService<Hello>) crud).getFallbackScanCount()).isEqualTo(fallbacks);
+    }
+
+    @Test
+    public void orientDbFilterShouldAcceptInMemory() {
+        Hello hello = new Hello();
+        hello.setName("Memory");
+
+        assertThat(OrientDbFilter.<Hello>like("name", "Mem%").accept(hello)).isTrue();
+        assertThat(OrientDbFilter.<Hello>eq("name", "Memory").and(like("name", "%ory")).accept(hello)).isTrue();
+        assertThat(OrientDbFilter.<Hello>isNull("name").accept(hello)).isFalse();
+        assertThat(OrientDbFilter.not(OrientDbFilter.<Hello>eq("name", "Memory")).accept(hello)).isFalse();
+    }
+
+    @Test
+    public void orientDbFilterShouldAcceptTheEntitiesFoundByItsPushDown() {
+        List<Hello> saved = new ArrayList<>();
+        for (Hello.Priority priority : Hello.Priority.values()) {
+            Hello hello = new Hello();
+            hello.setName("Same-" + priority);
+            hello.setPriority(priority);
+            saved.add(crud.save(hello));
+        }
+
+        Hello none = new Hello();
+        none.setName("Same-none");
+        saved.add(crud.save(none));
+
+        //The enums are compared by name, not by ordinal, and a null value of an in accepts the null fields
+        List<OrientDbFilter<Hello>> filters = Arrays.asList(
+                OrientDbFilter.<Hello>gt("priority", Hello.Priority.LOW),
+                OrientDbFilter.<Hello>lte("priority", Hello.Priority.LOW),
+                OrientDbFilter.<Hello>gte("priority", "LOW"),
+                OrientDbFilter.<Hello>eq("priority", Hello.Priority.HIGH),
+                OrientDbFilter.<Hello>in("priority", Arrays.asList(Hello.Priority.LOW, Hello.Priority.HIGH)),
+                OrientDbFilter.<Hello>in("priority", Arrays.asList(Hello.Priority.MEDIUM, null)),
+                OrientDbFilter.<Hello>in("priority", Arrays.asList((Object) null)));
+
+        for (OrientDbFilter<Hello> filter : filters) {
+            OrientDbFilter<Hello> same = OrientDbFilter.<Hello>like("name", "Same-%").and(filter);
+
+            List<String> pushed = new ArrayList<>();
+            for (Hello hello : crud.findAll(same)) {
+                pushed.add(hello.getName());
+            }
+
+            List<String> accepted = new ArrayList<>();
+            for (Hello hello : saved) {
+                if (same.accept(hello)) {
+                    accepted.add(hello.getName());
+                }
+            }
+
+            Collections.sort(pushed);
+            Collections.sort(accepted);
+            assertThat(pushed).as(filter.toString()).isEqualTo(accepted);
+        }
+
+        assertThat(OrientDbFilter.<Hello>gt("priority", Hello.Priority.LOW).accept(saved.get(2))).isFalse();
+
+        for (Hello hello : saved) {
+            crud.delete(hello);
+        }
+    }
+
+    @Test
+    public void findAllWithOpaqueFilterShouldFallbackToScan() {
+        long fallbacks = ((OrientDbCrudService<Hello>) crud).getFallbackScanCount();
+
+        crud.findAll(new EntityFilter<Hello>() {
+            @Override
+            public boolean accept(Hello hello) {
+                return true;
+            }
+        });
+
+        assertThat(((OrientDbCrudService<Hello>) crud).getFallbackScanCount()).isEqualTo(fallbacks + 1);
+    }
+
+    @Test
+    public void parallelScanShouldFindTheSameEntitiesAsTheSequentialScan() {
+        WOrientConf conf = database.conf("parallel");
+        conf.setScanParallelism(4);
+        conf.setPoolMax(5);
+        conf.setPageSize(2);
+
+        OrientDbRepositoryImpl repo = database.newRepo(conf, Hello.class);
+        OrientDbCrud<Hello, String> parallel = new OrientDbCrudService<>(repo, Hello.class);
+        ForkJoinPool scanPool = repo.getScanPool();
+
+        List<Hello> saved = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Hello hello = new Hello();
+            hello.setName(i % 2 == 0 ? "Even" : "Odd");
+            saved.add(crud.save(hello));
+        }
+
+        EntityFilter<Hello> even = new EntityFilter<Hello>() {
+            @Override
+            public boolean accept(Hello hello) {
+                return "Even".equals(hello.getName());
+            }
+        };
+
+        List<String> expected = new ArrayList<>();
+        for (Hello hello : crud.findAll(even)) {
+            expected.add(hello.getId());
+        }
+
+        List<String> found = new ArrayList<>();
+        for (Hello hello : parallel.findAll(even)) {
+            found.add(hello.getId());
+        }
+
+        assertThat(found).hasSize(10).containsExactlyElementsOf(expected);
+        crud.delete(saved);
+
+        database.destroyRepos();
+        assertThat(scanPool.isShutdown()).isTrue();
+    }
+
+    @Test
+    public void parallelScanShouldBeRejectedIfThePoolCannotServeAllItsWorkers() {
+        WOrientConf conf = database.conf("parallel");
+        conf.setScanParallelism(4);
+        conf.setPoolMax(4);
+
+        try {
+            database.newRepo(conf, Hello.class);
+            fail("The workers and the other requests could wait for each other");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).contains("scanparallelism");
+        }
+    }
+
+    @Test
+    public void findAllWithIdsShouldKeepTheOrderOfTheIds() {
+        Hello first = new Hello();
+        first.setName("First");
+        first = crud.save(first);
+        Hello second = new Hello();
+        second.setName("Second");
+        second = crud.save(second);
+
+        String missing = first.getId().substring(0, first.getId().indexOf(':')) + ":999999";
+        Iterable<Hello> found = crud.findAll(Arrays.asList(second.getId(), missing, first.getId()));
+
+        List<String> names = new ArrayList<>();
+        for (Hello hello : found) {
+            names.add(hello == null ? null : hello.getName());
+        }
+
+        assertThat(names).containsExactly("Second", null, "First");
+        crud.delete(Arrays.asList(first, second));
+    }
+
+    @Test
+    public void countWithFilterShouldCountTheAcceptedEntities() {
+        List<Hello> saved = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Hello hello = new Hello();
+            hello.setName("Counted");
+            saved.add(crud.save(hello));
+        }
+
+        assertThat(crud.count(OrientDbFilter.<Hello>eq("name", "Counted"))).isEqualTo(3);
+        assertThat(crud.count(new EntityFilter<Hello>() {
+            @Override
+            public boolean accept(Hello hello) {
+                return "Counted".equals(hello.getName());
+            }
+        })).isEqualTo(3);
+
+        crud.delete(saved);
+        assertThat(crud.count(OrientDbFilter.<Hello>eq("name", "Counted"))).isEqualTo(0);
+    }
+
+    @Test
+    public void countShouldBeCachedUntilAnEntityIsSaved() {
+        WOrientConf conf = database.conf("counted");
+        conf.setCountCacheTtl(60000L);
+
+        OrientDbRepositoryImpl repo = database.newRepo(conf, Hello.class);
+        OrientDbCrud<Hello, String> counted = new OrientDbCrudService<>(repo, Hello.class);
+
+        long count = counted.count();
+        assertThat(counted.count()).isEqualTo(count);
+        assertThat(repo.getMetrics().counter("crud.Hello.countcache.hit").getCount()).isEqualTo(1);
+
+        Hello hello = new Hello();
+        hello.setName("Count");
+        counted.save(hello);
+        assertThat(counted.count()).isEqualTo(count + 1);
+
+        counted.delete(hello);
+        assertThat(counted.count()).isEqualTo(count);
+    }
+
+    @Test
+    public void cursorShouldIterateOverAllTheEntitiesPageByPage() {
+        for (int i = 0; i < 5; i++) {
+            Hello hello = new Hello();
+            hello.setName("Cursor" + i);
+            crud.save(hello);
+        }
+
+        List<String> names = new ArrayList<>();
+        try (OrientDbCursor<Hello> cursor = crud.cursor(OrientDbFilter.<Hello>like("name", "Cursor%"), 2)) {
+            while (cursor.hasNext()) {
+                names.add(cursor.next().getName());
+            }
+        }
+
+        //In the RID order, which is the order of creation within the cluster
+        assertThat(names).containsExactly("Cursor0", "Cursor1", "Cursor2", "Cursor3", "Cursor4");
+
+        OrientDbTransactionManager txManager = ((OrientDbRepositoryImpl) crud.getRepository()).getTransactionManager();
+
+        try (OrientDbCursor<Hello> cursor = crud.cursor(2)) {
+            //The cursor uses the connection bound to the thread
+            assertThat(txManager.isBound()).isTrue();
+            assertThat(cursor.stream().count()).isEqualTo(crud.count());
+        }
+
+        assertThat(txManager.isBound()).isFalse();
+    }
+
+    @Test
+    public void findPageShouldSeekThroughAllThePages() {
+        for (String name : new String[]{"Page-c", "Page-a", "Page-b", "Page-b", "Page-d"}) {
+            Hello hello = new Hello();
+            hello.setName(name);
+            crud.save(hello);
+        }
+
+        OrientDbFilter<Hello> filter = OrientDbFilter.like("name", "Page-%");
+        List<String> names = new ArrayList<>();
+
+        OrientDbPage<Hello> page = crud.findPage(OrientDbPageRequest.first(2, "name", true), filter);
+        while (true) {
+            assertThat(page.getContent().size()).isLessThanOrEqualTo(2);
+            for (Hello hello : page.getContent()) {
+                names.add(hello.getName());
+            }
+            if (!page.hasNext()) {
+                break;
+            }
+            page = crud.findPage(OrientDbPageRequest.next(page.getNextToken(), 2), filter);
+        }
+
+        assertThat(names).containsExactly("Page-a", "Page-b", "Page-b", "Page-c", "Page-d");
+
+        page = crud.findPage(OrientDbPageRequest.first(3), filter);
+        assertThat(page.getContent()).hasSize(3);
+        page = crud.findPage(OrientDbPageRequest.next(page.getNextToken(), 3), filter);
+        assertThat(page.getContent()).hasSize(2);
+        assertThat(page.hasNext()).isFalse();
+    }
+
+    @Test
+    public void findPageShouldSeekThroughTheEntitiesSharingAKey() {
+        List<String> ids = new ArrayList<>();
+        for (String name : new String[]{"Tie-b", "Tie-a", "Tie-b", "Tie-c", "Tie-b"}) {
+            Hello hello = new Hello();
+            hello.setName(name);
+            ids.add(crud.save(hello).getId());
+        }
+
+        OrientDbFilter<Hello> filter = OrientDbFilter.like("name", "Tie-%");
+
+        //The entities sharing a key are ordered by RID, the first page ends within the ties
+        OrientDbPage<Hello> page = crud.findPage(OrientDbPageRequest.first(2, "name", true), filter);
+        assertThat(idsOf(page)).containsExactly(ids.get(1), ids.get(0));
+
+        //A tie of the previous page is deleted before the next one is requested
+        crud.delete(ids.get(0));
+
+        page = crud.findPage(OrientDbPageRequest.next(page.getNextToken(), 2), filter);
+        assertThat(idsOf(page)).containsExactly(ids.get(2), ids.get(4));
+
+        page = crud.findPage(OrientDbPageRequest.next(page.getNextToken(), 2), filter);
+        assertThat(idsOf(page)).containsExactly(ids.get(3));
+        assertThat(page.hasNext()).isFalse();
+
+        //Descending, the ties are still ordered by RID
+        page = crud.findPage(OrientDbPageRequest.first(2, "name", false), filter);
+        assertThat(idsOf(page)).containsExactly(ids.get(3), ids.get(2));
+
+        page = crud.findPage(OrientDbPageRequest.next(page.getNextToken(), 2), filter);
+        assertThat(idsOf(page)).containsExactly(ids.get(4), ids.get(1));
+        assertThat(page.hasNext()).isFalse();
+    }
+
+    private static List<String> idsOf(OrientDbPage<Hello> page) {
+        List<String> ids = new ArrayList<>();
+        for (Hello hello : page.getContent()) {
+            ids.add(hello.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void saveInBatchShouldCommitEachChunk() {
+        List<Hello> hellos = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            Hello hello = new Hello();
+            hello.setName("Batch" + i);
+            hellos.add(hello);
+        }
+
+        List<OrientDbBatchResult<Hello>> results = crud.saveInBatch(hellos, 3, true);
+
+        assertThat(results).hasSize(3);
+        assertThat(results.get(0).getEntities()).hasSize(3);
+        assertThat(results.get(2).getEntities()).hasSize(1);
+        for (OrientDbBatchResult<Hello> result : results) {
+            assertThat(result.isSuccess()).isTrue();
+        }
+        assertThat(crud.findAll(OrientDbFilter.<Hello>like("name", "Batch%"))).hasSize(7);
+
+        List<Hello> saved = new ArrayList<>();
+        for (OrientDbBatchResult<Hello> result : results) {
+            saved.addAll(result.getEntities());
+        }
+
+        results = crud.deleteInBatch(saved, 5);
+        assertThat(results).hasSize(2);
+        assertThat(crud.findAll(OrientDbFilter.<Hello>like("name", "Batch%"))).isEmpty();
+    }
+
+    @Test
+    public void crudShouldBeUsableConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Hello>> futures = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < 40; i++) {
+                final String name = "Concurrent" + i;
+                futures.add(executor.submit(new Callable<Hello>() {
+                    @Override
+                    public Hello call() throws Exception {
+                        Hello hello = new Hello();
+                        hello.setName(name);
+                        Hello saved = crud.save(hello);
+                        return crud.findOne(saved.getId());
+                    }
+                }));
+            }
+
+            for (Future<Hello> future : futures) {
+                assertThat(future.get()).isNotNull();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(crud.findAll(OrientDbFilter.<Hello>like("name", "Concurrent%"))).hasSize(40);
+    }
+
+    @Test
+    public void conflictingTransactionBlockShouldBeRetried() throws Exception {
+        WOrientConf conf = database.conf("retry");
+        conf.setTxRetries(3);
+        conf.setTxRetryDelay(1L);
+
+        final OrientDbRepositoryImpl repo = database.newRepo(conf, Hello.class);
+        final OrientDbCrud<Hello, String> retried = new OrientDbCrudService<>(repo, Hello.class);
+        final String id = savedHello(retried, "Retry").getId();
+        final AtomicInteger attempts = new AtomicInteger();
+
+        String name = retried.executeTransactionalBlock(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                Hello hello = retried.findOne(id);
+
+                if (attempts.incrementAndGet() == 1) {
+                    updateConcurrently(retried, id);
+                }
+
+                hello.setName("Retried");
+                return retried.save(hello).getName();
+            }
+        });
+
+        assertThat(name).isEqualTo("Retried");
+        assertThat(attempts.get()).isEqualTo(2);
+        assertThat(retried.findOne(id).getName()).isEqualTo("Retried");
+        assertThat(repo.getMetrics().counter("crud.Hello.transaction.conflict").getCount()).isEqualTo(1);
+        assertThat(repo.getMetrics().counter("crud.Hello.transaction.retry").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void conflictShouldBeRethrownOnceTheRetriesAreExhausted() throws Exception {
+        WOrientConf conf = database.conf("retry");
+        conf.setTxRetries(2);
+        conf.setTxRetryDelay(1L);
+
+        final OrientDbRepositoryImpl repo = database.newRepo(conf, Hello.class);
+        final OrientDbCrud<Hello, String> retried = new OrientDbCrudService<>(repo, Hello.class);
+        final String id = savedHello(retried, "Retry").getId();
+        final AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            retried.executeTransactionalBlock(new Runnable() {
+                @Override
+                public void run() {
+                    attempts.incrementAndGet();
+                    Hello hello = retried.findOne(id);
+                    updateConcurrently(retried, id);
+                    hello.setName("Retried");
+                    retried.save(hello);
+                }
+            });
+            fail("Each attempt conflicts with a concurrent modification");
+        } catch (HasBeenRollBackException e) {
+            assertThat(rootCause(e)).isInstanceOf(OConcurrentModificationException.class);
+        }
+
+        //The first attempt and the two retries
+        assertThat(attempts.get()).isEqualTo(3);
+        assertThat(repo.getMetrics().counter("crud.Hello.transaction.conflict").getCount()).isEqualTo(3);
+        assertThat(repo.getMetrics().counter("crud.Hello.transaction.retry").getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void interruptedBackoffShouldStopTheRetries() throws Exception {
+        WOrientConf conf = database.conf("retry");
+        conf.setTxRetries(2);
+        conf.setTxRetryDelay(10000L);
+        conf.setTxRetryMaxDelay(10000L);
+
+        final OrientDbRepositoryImpl repo = database.newRepo(conf, Hello.class);
+        final OrientDbCrud<Hello, String> retried = new OrientDbCrudService<>(repo, Hello.class);
+        final String id = savedHello(retried, "Retry").getId();
+        final AtomicInteger attempts = new AtomicInteger();
+        long start = System.currentTimeMillis();
+
+        try {
+            retried.executeTransactionalBlock(new Runnable() {
+                @Override
+                public void run() {
+                    attempts.incrementAndGet();
+                    Hello hello = retried.findOne(id);
+                    updateConcurrently(retried, id);
+                    hello.setName("Retried");
+
+                    try {
+                        retried.save(hello);
+                    } finally {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            fail("The backoff has been interrupted");
+        } catch (HasBeenRollBackException e) {
+            assertThat(rootCause(e)).isInstanceOf(OConcurrentModificationException.class);
+        } finally {
+            assertThat(Thread.interrupted()).isTrue();
+        }
+
+        //The backoff of up to 10s has not been waited for
+        assertThat(attempts.get()).isEqualTo(1);
+        assertThat(System.currentTimeMillis() - start).isLessThan(5000);
+    }
+
+    @Test
+    public void joinedTransactionBlockShouldNotBeRetried() throws Exception {
+        WOrientConf conf = database.conf("retry");
+        conf.setTxRetries(2);
+        conf.setTxRetryDelay(1L);
+
+        final OrientDbRepositoryImpl repo = database.newRepo(conf, Hello.class);
+        final OrientDbCrud<Hello, String> retried = new OrientDbCrudService<>(repo, Hello.class);
+        final String id = savedHello(retried, "Retry").getId();
+        final AtomicInteger outerAttempts = new AtomicInteger();
+        final AtomicInteger innerAttempts = new AtomicInteger();
+
+        retried.executeTransactionalBlock(new Runnable() {
+            @Override
+            public void run() {
+                outerAttempts.incrementAndGet();
+
+                try {
+                    retried.executeTransactionalBlock(OrientDbPropagation.REQUIRED, new Runnable() {
+                        @Override
+                        public void run() {
+                            Hello hello = retried.findOne(id);
+
+                            if (innerAttempts.incrementAndGet() == 1) {
+                                updateConcurrently(retried, id);
+                            }
+
+                            hello.setName("Retried");
+                            retried.save(hello);
+                        }
+                    });
+                } catch (HasBeenRollBackException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+
+        //The conflict is retried by the outer block only, and counted once
+        assertThat(outerAttempts.get()).isEqualTo(2);
+        assertThat(innerAttempts.get()).isEqualTo(2);
+        assertThat(repo.getMetrics().counter("crud.Hello.transaction.conflict").getCount()).isEqualTo(1);
+        assertThat(repo.getMetrics().counter("crud.Hello.transaction.retry").getCount()).isEqualTo(1);
+    }
+
+    private static Hello savedHello(OrientDbCrud<Hello, String> crud, String name) {
+        Hello hello = new Hello();
+        hello.setName(name);
+        return crud.save(hello);
+    }
+
+    /**
+     * Update the entity from another thread, with another connection of the pool.
+     */
+    private static void updateConcurrently(final OrientDbCrud<Hello, String> crud, final String id) {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    Hello hello = crud.findOne(id);
+                    hello.setName("Concurrent");
+                    crud.save(hello);
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Throwable rootCause(Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    @Test
+    public void transactionBlockShouldShareTheDatabaseBetweenTheCrudOfARepository() throws Exception {
+        final OrientDbRepositoryImpl repo = (OrientDbRepositoryImpl) crud.getRepository();
+        final OrientDbCrud<Olleh, String> sameRepoCrud = new OrientDbCrudService<>(repo, Olleh.class);
+
+        crud.executeTransactionalBlock(new Runnable() {
+            @Override
+            public void run() {
+                OObjectDatabaseTx db = repo.getTransactionManager().acquireDb();
+                try {
+                    Olleh olleh = new Olleh();
+                    olleh.setName("Shared");
+                    sameRepoCrud.save(olleh);
+                    assertThat(repo.getTransactionManager().acquireDb()).isSameAs(db);
+                    repo.getTransactionManager().releaseDb();
+                } finally {
+                    repo.getTransactionManager().releaseDb();
+                }
+            }
+        });
+
+        assertThat(repo.getTransactionManager().isTransactionActive()).isFalse();
+    }
+
+    @Test
+    public void requiredTransactionBlocksShouldJoinTheOuterOne() throws Exception {
+        Integer result = crud.executeTransactionalBlock(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return crud.executeTransactionalBlock(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        Hello hello = new Hello();
+                        hello.setName("Joined");
+                        crud.save(hello);
+                        return 1;
+                    }
+                }) + 1;
+            }
+        });
+
+        assertThat(result).isEqualTo(2);
+        assertThat(crud.findOne(OrientDbFilter.<Hello>eq("name", "Joined"))).isNotNull();
+    }
+
+    @Test(expected = HasBeenRollBackException.class)
+    public void failedRequiredBlockShouldMarkTheOuterTransactionAsRollbackOnly() throws Exception {
+        crud.executeTransactionalBlock(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    crud.executeTransactionalBlock(OrientDbPropagation.REQUIRED, new Runnable() {
+                        @Override
+                        public void run() {
+                            Hello hello = new Hello();
+                            hello.setName("RollbackOnly");
+                            crud.save(hello);
+                            throw new IllegalStateException("failure");
+                        }
+                    });
+                } catch (HasBeenRollBackException e) {
+                    //ignore, the outer transaction must still be rolled back
+                }
+            }
+        });
+    }
+
+    @Test
+    public void rollbackOnlyTransactionShouldBeRolledBackOnce() throws Exception {
+        WOrientConf conf = database.conf("rollbackonly");
+        conf.setTxType(OPTIMISTIC);
+
+        OrientDbRepositoryImpl repo = database.newRepo(conf, Hello.class);
+        final OrientDbCrud<Hello, String> crud = new OrientDbCrudService<>(repo, Hello.class);
+
+        try {
+            crud.executeTransactionalBlock(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        crud.executeTransactionalBlock(OrientDbPropagation.REQUIRED, new Runnable() {
+                            @Override
+                            public void run() {
+                                Hello hello = new Hello();
+                                hello.setName("RolledBackOnce");
+                                crud.save(hello);
+                                throw new IllegalStateException("failure");
+                            }
+                        });
+                    } catch (HasBeenRollBackException e) {
+                        //ignore, the outer transaction must still be rolled back
+                    }
+                }
+            });
+            fail("The rollback only transaction has been committed");
+        } catch (HasBeenRollBackException e) {
+            //expected
+        }
+
+        assertThat(repo.getMetrics().counter("tx.rollback").getCount()).isEqualTo(1);
+        assertThat(repo.getMetrics().counter("tx.commit").getCount()).isEqualTo(0);
+        assertThat(crud.findOne(OrientDbFilter.<Hello>eq("name", "RolledBackOnce"))).isNull();
+        assertThat(repo.getTransactionManager().isBound()).isFalse();
+    }
+
+    @Test
+    public void failedNestedBlockWithoutChangeShouldNotRollbackTheOuterTransaction() throws Exception {
+        crud.executeTransactionalBlock(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    crud.executeTransactionalBlock(OrientDbPropagation.NESTED, new Runnable() {
+                        @Override
+                        public void run() {
+                            throw new IllegalStateException("failure");
+                        }
+                    });
+                } catch (HasBeenRollBackException e) {
+                    //ignore, nothing has been changed by the nested block
+                }
+            }
+        });
+    }
+
+    @Test
+    public void requiresNewBlockShouldUseADedicatedDatabase() throws Exception {
+        final OrientDbRepositoryImpl repo = (OrientDbRepositoryImpl) crud.getRepository();
+
+        crud.executeTransactionalBlock(new Runnable() {
+            @Override
+            public void run() {
+                final OObjectDatabaseTx outer = repo.getTransactionManager().acquireDb();
+                repo.getTransactionManager().releaseDb();
+
+                crud.executeTransactionalBlock(OrientDbPropagation.REQUIRES_NEW, new Runnable() {
+                    @Override
+                    public void run() {
+                        OObjectDatabaseTx inner = repo.getTransactionManager().acquireDb();
+                        repo.getTransactionManager().releaseDb();
+                        assertThat(inner).isNotSameAs(outer);
+                    }
+                });
+
+                assertThat(repo.getTransactionManager().acquireDb()).isSameAs(outer);
+                repo.getTransactionManager().releaseDb();
+            }
+        });
+    }
+
+    @Test
+    public void requiresNewTransactionsShouldBeBoundedByThePoolMax() throws Exception {
+        WOrientConf conf = database.conf("dedicated");
+        conf.setPoolMax(1);
+        conf.setPoolAcquireTimeout(50L);
+
+        final OrientDbRepositoryImpl repo = database.newRepo(conf, Hello.class);
+        final OrientDbCrud<Hello, String> bounded = new OrientDbCrudService<>(repo, Hello.class);
+        final List<Throwable> failures = new ArrayList<>();
+
+        bounded.executeTransactionalBlock(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    bounded.executeTransactionalBlock(OrientDbPropagation.REQUIRES_NEW, new Runnable() {
+                        @Override
+                        public void run() {
+                            //The only dedicated connection is used by this block
+                            try {
+                                bounded.executeTransactionalBlock(OrientDbPropagation.REQUIRES_NEW, new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        fail("No dedicated connection is available");
+                                    }
+                                });
+                            } catch (InitTransactionException | HasBeenRollBackException e) {
+                                failures.add(e.getCause());
+                            }
+                        }
+                    });
+                } catch (HasBeenRollBackException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+
+        assertThat(failures).hasSize(1);
+        assertThat(failures.get(0)).isInstanceOf(OrientDbPoolExhaustedException.class);
+        assertThat(repo.getMetrics().getGauges().get("tx.dedicated").getAsLong()).isEqualTo(0);
+    }
+
+    @Test
+    public void crudShouldWorkWithThePartitionedPool() throws Exception {
+        WOrientConf conf = database.conf("partitioned");
+        conf.setPoolType(WOrientConf.PoolType.PARTITIONED);
+
+        OrientDbRepositoryImpl repo = database.newRepo(conf, Hello.class);
+
+        OrientDbCrud<Hello, String> partitioned = new OrientDbCrudService<>(repo, Hello.class);
+
+        Hello hello = new Hello();
+        hello.setName("Partitioned");
+        Hello saved = partitioned.save(hello);
+
+        assertThat(partitioned.findOne(saved.getId()).getName()).isEqualTo("Partitioned");
+        assertThat(crud.findOne(saved.getId())).isNotNull();
+
+        try {
+            repo.get();
+            fail("The object pool should not be available with the partitioned pool");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+
+        partitioned.delete(saved);
+    }
+
+    @Test
+    public void crudOperationsShouldBeRecordedInTheRepositoryMetrics() throws Exception {
+        OrientDbMetricRegistry metrics = ((OrientDbRepositoryImpl) crud.getRepository()).getMetrics();
+        long saves = metrics.histogram("crud.Hello.save").getCount();
+        long commits = metrics.counter("tx.commit").getCount();
+        long scanned = metrics.counter("crud.Hello.fallback.scanned").getCount();
+
+        Hello saved = crud.executeTransactionalBlock(new Callable<Hello>() {
+            @Override
+            public Hello call() throws Exception {
+                Hello hello = new Hello();
+                hello.setName("Metrics");
+                return crud.save(hello);
+            }
+        });
+
+        crud.findAll(new EntityFilter<Hello>() {
+            @Override
+            public boolean accept(Hello hello) {
+                return false;
+            }
+        });
+
+        assertThat(metrics.histogram("crud.Hello.save").getCount()).isEqualTo(saves + 1);
+        assertThat(metrics.histogram("crud.Hello.save").getMax()).isGreaterThan(0);
+        assertThat(metrics.counter("tx.commit").getCount()).isEqualTo(commits + 1);
+        assertThat(metrics.counter("crud.Hello.fallback.scanned").getCount()).isGreaterThan(scanned);
+        assertThat(metrics.histogram("pool.wait").getCount()).isGreaterThan(0);
+        assertThat(metrics.getGauges()).containsKeys("pool.created", "pool.available", "pool.used", "pool.max");
+
+        crud.delete(saved);
+    }
+
+    @Test
+    public void findOneShouldUseTheCacheUntilTheEntityIsSaved() throws Exception {
+        WOrientConf conf = database.conf("cached");
+        conf.setCacheSize(100);
+
+        OrientDbRepositoryImpl repo = database.newRepo(conf, Hello.class);
+
+        OrientDbCrud<Hello, String> cached = new OrientDbCrudService<>(repo, Hello.class);
+        OrientDbMetricRegistry metrics = repo.getMetrics();
+
+        Hello hello = new Hello();
+        hello.setName("Cached");
+        String id = cached.save(hello).getId();
+
+        assertThat(cached.findOne(id).getName()).isEqualTo("Cached");
+        assertThat(metrics.counter("crud.Hello.cache.miss").getCount()).isEqualTo(1);
+
+        Hello hit = cached.findOne(id);
+        assertThat(hit.getName()).isEqualTo("Cached");
+        assertThat(cached.exists(id)).isTrue();
+        assertThat(metrics.counter("crud.Hello.cache.hit").getCount()).isEqualTo(2);
+
+        //Saving through the crud evicts the entity
+        hit.setName("Renamed");
+        cached.save(hit);
+        assertThat(cached.findOne(id).getName()).isEqualTo("Renamed");
+        assertThat(metrics.counter("crud.Hello.cache.miss").getCount()).isEqualTo(2);
+
+        cached.delete(id);
+        assertThat(cached.findOne(id)).isNull();
+    }
+
+    @Test
+    public void queryCachedShouldReuseTheResultUntilAnEntityIsSaved() throws Exception {
+        WOrientConf conf = database.conf("querycached");
+        conf.setQueryCacheSize(10);
+
+        OrientDbRepositoryImpl repo = database.newRepo(conf, Hello.class);
+
+        OrientDbCrud<Hello, String> cached = new OrientDbCrudService<>(repo, Hello.class);
+        OrientDbMetricRegistry metrics = repo.getMetrics();
+
+        Hello hello = new Hello();
+        hello.setName("Queried");
+        cached.save(hello);
+
+        List<Hello> first = cached.queryCached(new OSQLSynchQuery<Hello>("select from Hello where name = ?"), "Queried");
+        List<Hello> second = cached.queryCached(new OSQLSynchQuery<Hello>("select from  Hello where name = ?"),
+                "Queried");
+        assertThat(second).isSameAs(first);
+        assertThat(metrics.counter("crud.Hello.querycache.hit").getCount()).isEqualTo(1);
+
+        //Saving through the crud clears the query cache
+        Hello other = new Hello();
+        other.setName("Queried");
+        cached.save(other);
+
+        List<Hello> third = cached.queryCached(new OSQLSynchQuery<Hello>("select from Hello where name = ?"), "Queried");
+        assertThat(third).hasSize(first.size() + 1);
+        assertThat(metrics.counter("crud.Hello.querycache.miss").getCount()).isEqualTo(2);
+
+        for (Hello saved : third) {
+            cached.delete(saved.getId());
+        }
+    }
+
+    @Test
+    public void asyncCrudShouldRunTheOperationsOnTheExecutor() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        AsyncOrientDbCrud<Hello, String> async =
+                new OrientDbAsyncCrudService<>(crud, sharedRepo.getTransactionManager(), executor);
+
+        try {
+            Hello hello = new Hello();
+            hello.setName("Async");
+            final String id = async.save(hello).toCompletableFuture().get().getId();
+
+            String name = async.findOne(id)
+                    .thenCombine(async.exists(id), (found, exists) -> exists ? found.getName() : null)
+                    .toCompletableFuture().get();
+            assertThat(name).isEqualTo("Async");
+
+            //The entities are detached before the connection is released, they are read without it
+            Hello found = async.findOne(id).toCompletableFuture().get();
+            assertThat(found.getClass()).isEqualTo(Hello.class);
+            assertThat(found.getName()).isEqualTo("Async");
+
+            List<Hello> queried = async.query(new OSQLSynchQuery<Hello>("select from Hello where name = ?"), "Async")
+                    .toCompletableFuture().get();
+            assertThat(queried).hasSize(1);
+            assertThat(queried.get(0).getClass()).isEqualTo(Hello.class);
+
+            async.delete(id).toCompletableFuture().get();
+            assertThat(async.exists(id).toCompletableFuture().get()).isFalse();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void virtualAsyncModeShouldBoundTheOperationsUsingAConnection() throws Exception {
+        WOrientConf conf = database.conf("virtual");
+        conf.setAsyncMode(WOrientConf.AsyncMode.VIRTUAL);
+        conf.setPoolMax(2);
+
+        final OrientDbAsyncExecutor executor = OrientDbAsyncExecutor.create(conf,
+                new InMemoryOrientDbMetrics().getRegistry("virtual"));
+
+        try {
+            //Falls back to the pooled executor if the runtime has no virtual threads
+            assumeTrue(executor.getMode() == WOrientConf.AsyncMode.VIRTUAL);
+
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger maxRunning = new AtomicInteger();
+            final CountDownLatch started = new CountDownLatch(2);
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(20);
+
+            for (int i = 0; i < 20; i++) {
+                executor.execute(() -> {
+                    try {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        started.countDown();
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        running.decrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }
+
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(running.get()).isEqualTo(2);
+            release.countDown();
+            assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(maxRunning.get()).isEqualTo(2);
+
+            //The crud operations run on the virtual threads
+            AsyncOrientDbCrud<Hello, String> async =
+                new OrientDbAsyncCrudService<>(crud, sharedRepo.getTransactionManager(), executor);
+            Hello hello = new Hello();
+            hello.setName("Virtual");
+            final String id = crud.save(hello).getId();
+
+            List<CompletableFuture<Hello>> found = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                found.add(async.findOne(id).toCompletableFuture());
+            }
+
+            for (CompletableFuture<Hello> future : found) {
+                assertThat(future.get(5, TimeUnit.SECONDS).getName()).isEqualTo("Virtual");
+            }
+
+            crud.delete(id);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void pendingStreamShouldNotHoldTheAsyncThreads() throws Exception {
+        WOrientConf conf = database.conf("stream");
+        conf.setAsyncThreads(1);
+
+        OrientDbRepositoryImpl repo = database.newRepo(conf, Hello.class);
+        OrientDbCrudService<Hello> streamed = new OrientDbCrudService<>(repo, Hello.class);
+        AsyncOrientDbCrud<Hello, String> async = new OrientDbAsyncCrudService<>(streamed, repo.getTransactionManager(),
+                repo.getAsyncExecutor());
+        final CountDownLatch subscribed = new CountDownLatch(1);
+        final Subscription[] subscription = new Subscription[1];
+
+        Hello hello = new Hello();
+        hello.setName("Pending");
+        String id = streamed.save(hello).getId();
+
+        //No element is requested, the subscription waits for the demand
+        streamed.stream("select from Hello").subscribe(new Subscriber<Hello>() {
+            public void onSubscribe(Subscription s) {
+                subscription[0] = s;
+                subscribed.countDown();
+            }
+
+            public void onNext(Hello hello) {
+            }
+
+            public void onError(Throwable t) {
+            }
+
+            public void onComplete() {
+            }
+        });
+
+        try {
+            assertThat(subscribed.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(async.findOne(id).toCompletableFuture().get(5, TimeUnit.SECONDS).getName())
+                    .isEqualTo("Pending");
+        } finally {
+            subscription[0].cancel();
+            streamed.delete(id);
+        }
+    }
+
+    @Test
+    public void streamShouldPublishTheEntitiesOnDemand() throws Exception {
+        List<Hello> saved = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Hello hello = new Hello();
+            hello.setName("Stream");
+            saved.add(crud.save(hello));
+        }
+
+        final List<Hello> received = new ArrayList<>();
+        final CountDownLatch cancelled = new CountDownLatch(1);
+
+        crud.stream("select from Hello where name = ?", "Stream").subscribe(new Subscriber<Hello>() {
+            private Subscription subscription;
+
+            public void onSubscribe(Subscription s) {
+                subscription = s;
+                s.request(1);
+            }
+
+            public void onNext(Hello hello) {
+                received.add(hello);
+
+                if (received.size() < 3) {
+                    subscription.request(1);
+                } else {
+                    subscription.cancel();
+                    cancelled.countDown();
+                }
+            }
+
+            public void onError(Throwable throwable) {
+                fail("Unexpected error", throwable);
+            }
+
+            public void onComplete() {
+                fail("The subscription has been cancelled");
+            }
+        });
+
+        assertThat(cancelled.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(received).hasSize(3);
+        assertThat(received.get(0).getName()).isEqualTo("Stream");
+
+        crud.delete(saved);
+    }
+
+    @Test
+    public void liveQueriesShouldEvictTheEntitiesChangedByAnotherClient() throws Exception {
+        WOrientConf conf = database.conf("live");
+        conf.setCacheSize(100);
+        conf.setCacheTtl(0L);
+
+        OrientDbRepositoryImpl repo = database.newRepo(conf, Hello.class);
+        final BlockingQueue<String> evicted = new LinkedBlockingQueue<>();
+
+        OrientDbCrudService<Hello> cached = new OrientDbCrudService<Hello>(repo, Hello.class) {
+            @Override
+            void evictFromCache(String rid) {
+                super.evictFromCache(rid);
+                evicted.add(rid);
+            }
+        };
+        OrientDbLiveInvalidation live = OrientDbLiveInvalidation.subscribe(repo,
+                Arrays.<OrientDbCrudService<?>>asList(cached));
+
+        try {
+            Hello hello = new Hello();
+            hello.setName("Live");
+            String id = crud.save(hello).getId();
+
+            //The creation is notified as well
+            assertThat(evicted.poll(5, TimeUnit.SECONDS)).isEqualTo(id);
+            assertThat(cached.findOne(id).getName()).isEqualTo("Live");
+
+            //Update through another repository, which does not share the cache
+            Hello other = crud.findOne(id);
+            other.setName("Updated");
+            crud.save(other);
+
+            assertThat(evicted.poll(5, TimeUnit.SECONDS)).isEqualTo(id);
+            assertThat(cached.findOne(id).getName()).isEqualTo("Updated");
+            crud.delete(id);
+        } finally {
+            live.close();
+            database.destroyRepos();
+        }
+    }
+
     @Test
     public void crudShouldNotUseLazyLoadingIfSetToFalse(){
         crud.getRepository().getConf().setAutoLazyLoading(false);
@@ -0,0 +1,23 @@
+package org.wisdom.orientdb.runtime;
+
+import org.junit.Test;
+import org.wisdom.orientdb.model.Hello;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OrientDbEntityScannerTest {
+
+    @Test
+    public void entityNameShouldOnlyBeFoundForTheEntityClasses() throws IOException {
+        try (InputStream in = Hello.class.getResourceAsStream("Hello.class")) {
+            assertThat(OrientDbEntityScanner.entityName(in)).isEqualTo(Hello.class.getName());
+        }
+
+        try (InputStream in = OrientDbEntityScannerTest.class.getResourceAsStream("OrientDbEntityScannerTest.class")) {
+            assertThat(OrientDbEntityScanner.entityName(in)).isNull();
+        }
+    }
+}
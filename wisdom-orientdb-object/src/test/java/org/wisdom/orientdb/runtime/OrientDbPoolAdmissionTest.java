@@ -0,0 +1,91 @@
+package org.wisdom.orientdb.runtime;
+
+import com.orientechnologies.orient.object.db.OObjectDatabaseTx;
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.wisdom.orientdb.conf.WOrientConf;
+import org.wisdom.orientdb.object.OrientDbPoolExhaustedException;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class OrientDbPoolAdmissionTest {
+    @ClassRule
+    public static final OrientDbTestDatabase database = new OrientDbTestDatabase();
+
+    @After
+    public void destroyRepos() {
+        database.destroyRepos();
+    }
+
+    @Test
+    public void exhaustedPoolShouldRejectTheWaitersOverTheLimit() throws Exception {
+        WOrientConf conf = database.conf("admission");
+        conf.setPoolMin(1);
+        conf.setPoolMax(1);
+        conf.setPoolMaxWaiters(0);
+
+        final OrientDbRepositoryImpl repo = database.newRepo(conf);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        OObjectDatabaseTx db = repo.acquireDb();
+
+        try {
+            try {
+                executor.submit(() -> repo.acquireDb().close()).get();
+                fail("The pool is exhausted and no thread can wait");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(OrientDbPoolExhaustedException.class);
+            }
+
+            conf.setPoolMaxWaiters(-1);
+            conf.setPoolAcquireTimeout(50L);
+            long start = System.currentTimeMillis();
+
+            try {
+                executor.submit(() -> repo.acquireDb().close()).get();
+                fail("No connection has been released");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(OrientDbPoolExhaustedException.class);
+                assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(50);
+            }
+        } finally {
+            db.close();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void releasedConnectionShouldAdmitAWaiter() throws Exception {
+        WOrientConf conf = database.conf("release");
+        conf.setPoolMin(1);
+        conf.setPoolMax(1);
+        conf.setPoolAcquireTimeout(5000L);
+
+        final OrientDbRepositoryImpl repo = database.newRepo(conf);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        OObjectDatabaseTx db = repo.acquireDb();
+
+        try {
+            //The thread which holds the connection gets it again without waiting
+            repo.acquireDb();
+
+            Future<?> waiter = executor.submit(() -> repo.acquireDb().close());
+            Thread.sleep(50);
+            assertThat(waiter.isDone()).isFalse();
+
+            db.close();
+            waiter.get(5, TimeUnit.SECONDS);
+            assertThat(repo.getMetrics().counter("pool.timeout").getCount()).isEqualTo(0);
+        } finally {
+            db.close();
+            executor.shutdownNow();
+        }
+    }
+}
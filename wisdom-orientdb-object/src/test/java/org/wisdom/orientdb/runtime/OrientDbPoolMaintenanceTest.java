@@ -0,0 +1,39 @@
+package org.wisdom.orientdb.runtime;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.wisdom.orientdb.conf.WOrientConf;
+import org.wisdom.orientdb.metrics.InMemoryOrientDbMetrics;
+import org.wisdom.orientdb.model.Hello;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OrientDbPoolMaintenanceTest {
+    @ClassRule
+    public static final OrientDbTestDatabase database = new OrientDbTestDatabase();
+
+    @Test
+    public void warmUpShouldOpenPoolMinConnections() {
+        WOrientConf conf = database.conf("warmup");
+        conf.setPoolMin(3);
+        conf.setPoolMax(5);
+
+        OrientDbObjectPool pool = OrientDbObjectPool.create(conf);
+        OrientDbPoolMaintenance maintenance = new OrientDbPoolMaintenance(pool, conf, new InMemoryOrientDbMetrics()
+                .getRegistry(conf.getAlias()));
+
+        try {
+            maintenance.warmUp(Arrays.<Class<?>>asList(Hello.class));
+            assertThat(pool.getCreated()).isEqualTo(3);
+            assertThat(pool.getAvailable()).isEqualTo(3);
+
+            maintenance.validate();
+            assertThat(pool.getAvailable()).isEqualTo(3);
+        } finally {
+            maintenance.close();
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.wisdom.orientdb.runtime;
+
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.wisdom.api.model.Crud;
+import org.wisdom.orientdb.conf.WOrientConf;
+import org.wisdom.orientdb.metrics.InMemoryOrientDbMetrics;
+import org.wisdom.orientdb.metrics.OrientDbMetricRegistry;
+import org.wisdom.orientdb.metrics.OrientDbMetrics;
+import org.wisdom.orientdb.model.Hello;
+import org.wisdom.orientdb.othermodel.Olleh;
+
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class OrientDbRepositoryImplTest {
+    @ClassRule
+    public static final OrientDbTestDatabase database = new OrientDbTestDatabase();
+
+    @After
+    public void destroyRepos() {
+        database.destroyRepos();
+    }
+
+    @Test
+    public void updateAllCrudShouldOnlyReRegisterTheChangedEntities() {
+        List<Class<?>> entities = new ArrayList<>();
+        entities.add(Hello.class);
+
+        BundleContext context = mock(BundleContext.class);
+        ServiceRegistration registration = mock(ServiceRegistration.class);
+        doReturn(registration).when(context).registerService(any(String[].class), any(), any(Dictionary.class));
+        doReturn(registration).when(context).registerService(anyString(), any(), any(Dictionary.class));
+
+        OrientDbRepositoryImpl repo = database.newRepo(database.conf("update"), entities);
+
+        repo.registerAllCrud(context);
+        Crud<?, ?> hello = repo.getCrudServices().iterator().next();
+
+        entities.add(Olleh.class);
+        repo.updateAllCrud(context);
+        assertThat(repo.getCrudServices()).hasSize(2).contains(hello);
+
+        entities.remove(Hello.class);
+        repo.updateAllCrud(context);
+        assertThat(repo.getCrudServices()).hasSize(1).doesNotContain(hello);
+
+        //The Crud and AsyncOrientDbCrud services of Hello only
+        verify(registration, times(2)).unregister();
+    }
+
+    @Test
+    public void lazyRepositoryShouldOpenTheDatabaseOnFirstUse() {
+        BundleContext context = mock(BundleContext.class, RETURNS_MOCKS);
+        final OrientDbRepositoryImpl repo = database.newRepo(database.conf("lazy"), Hello.class);
+        final AtomicInteger opened = new AtomicInteger();
+
+        repo.registerAllCrudLazily(context, () -> {
+            opened.incrementAndGet();
+            repo.acquireDb().close();
+        });
+        assertThat(repo.getCrudServices()).hasSize(1);
+        assertThat(opened.get()).isEqualTo(0);
+
+        repo.acquireDb().close();
+        repo.acquireDb().close();
+        assertThat(opened.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void destroyedRepositoryShouldUnregisterItsGauges() {
+        OrientDbMetrics metrics = new InMemoryOrientDbMetrics();
+        WOrientConf conf = database.conf("gauges");
+        conf.setCacheSize(10);
+
+        List<Class<?>> entities = new ArrayList<>();
+        entities.add(Hello.class);
+
+        OrientDbRepositoryImpl first = new OrientDbRepositoryImpl(OrientDbTestDatabase.command(conf, entities),
+                metrics);
+        new OrientDbCrudService<>(first, Hello.class);
+        first.getStreamExecutor();
+
+        OrientDbMetricRegistry registry = metrics.getRegistry("gauges");
+        assertThat(registry.getGauges()).containsKeys("pool.max", "pool.waiters", "statement.size", "tx.dedicated",
+                "stream.active", "crud.Hello.cache.size");
+
+        //The repository of the updated configuration is created before the previous one is destroyed
+        OrientDbRepositoryImpl second = new OrientDbRepositoryImpl(OrientDbTestDatabase.command(conf, entities),
+                metrics);
+
+        try {
+            first.destroy();
+            assertThat(registry.getGauges()).containsKeys("pool.max", "pool.waiters", "statement.size",
+                    "tx.dedicated").doesNotContainKey("stream.active").doesNotContainKey("crud.Hello.cache.size");
+        } finally {
+            second.destroy();
+        }
+
+        assertThat(registry.getGauges()).isEmpty();
+        assertThat(registry.getHistograms()).containsKey("pool.wait");
+    }
+}
@@ -0,0 +1,133 @@
+package org.wisdom.orientdb.runtime;
+
+import com.orientechnologies.orient.object.db.OObjectDatabaseTx;
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.wisdom.orientdb.conf.WOrientConf;
+import org.wisdom.orientdb.model.Hello;
+import org.wisdom.orientdb.object.OrientDbCrud;
+import org.wisdom.orientdb.object.OrientDbRepoCommand;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+
+public class OrientDbStatementCacheTest {
+    @ClassRule
+    public static final OrientDbTestDatabase database = new OrientDbTestDatabase();
+
+    @After
+    public void destroyRepos() {
+        database.destroyRepos();
+    }
+
+    @Test
+    public void namedStatementsShouldBeParsedOnce() throws Exception {
+        OrientDbRepositoryImpl repo = database.newRepo(database.conf("named"), Hello.class);
+        OrientDbCrud<Hello, String> crud = new OrientDbCrudService<>(repo, Hello.class);
+        OrientDbStatementCache statements = repo.getStatementCache();
+
+        OObjectDatabaseTx db = repo.acquireDb();
+        try {
+            statements.register("byName", "select from Hello where name = ?");
+            statements.register("rename", "update Hello set name = ? where name = ?");
+        } finally {
+            db.close();
+        }
+
+        Hello hello = new Hello();
+        hello.setName("Named");
+        crud.save(hello);
+
+        assertThat(crud.queryNamed("byName", "Named")).hasSize(1);
+        crud.executeNamed("rename", "Renamed", "Named");
+        assertThat(crud.queryNamed("byName", "Named")).isEmpty();
+        assertThat(crud.queryNamed("byName", "Renamed")).hasSize(1);
+        assertThat(repo.getMetrics().histogram("statement.parse").getCount()).isEqualTo(2);
+        assertThat(repo.getMetrics().getGauges().get("statement.size").getAsLong()).isEqualTo(2);
+
+        try {
+            crud.queryNamed("rename", "Named", "Renamed");
+            fail("A command cannot be run as a query");
+        } catch (IllegalArgumentException e) {
+            //ok
+        }
+
+        db = repo.acquireDb();
+        try {
+            statements.register("invalid", "selct from Hello");
+            fail("An invalid statement must be rejected");
+        } catch (IllegalArgumentException e) {
+            //ok
+        } finally {
+            db.close();
+        }
+
+        crud.delete(crud.queryNamed("byName", "Renamed"));
+    }
+
+    @Test
+    public void namedStatementsShouldBeValidatedAtStartup() {
+        Map<String, String> valid = new HashMap<>();
+        valid.put("byName", "select from Hello where name = ?");
+        valid.put("purge", "delete from Hello where name = ?");
+
+        OrientDbRepositoryImpl repo = database.newRepo(command(database.conf("startup"), valid));
+        repo.registerAllCrud(mock(BundleContext.class, RETURNS_MOCKS));
+
+        OrientDbCrud<Hello, String> crud = new OrientDbCrudService<>(repo, Hello.class);
+        assertThat(crud.queryNamed("byName", "Nobody")).isEmpty();
+        assertThat(repo.getMetrics().histogram("statement.parse").getCount()).isEqualTo(2);
+
+        Map<String, String> invalid = new HashMap<>(valid);
+        invalid.put("unknown", "select from Unknown where name = ?");
+
+        OrientDbRepositoryImpl rejected = database.newRepo(command(database.conf("rejected"), invalid));
+
+        try {
+            rejected.registerAllCrud(mock(BundleContext.class, RETURNS_MOCKS));
+            fail("A statement of an unknown class must prevent the repository from starting");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).contains("unknown");
+        }
+
+        assertThat(rejected.getCrudServices()).isEmpty();
+    }
+
+    @Test
+    public void unnamedStatementsShouldBeClassifiedByTheirKeyword() {
+        assertThat(OrientDbStatementCache.isQuery("select from Hello")).isTrue();
+        assertThat(OrientDbStatementCache.isQuery("TRAVERSE out() from #12:1")).isTrue();
+        assertThat(OrientDbStatementCache.isQuery("update Hello set name = 'select'")).isFalse();
+        assertThat(OrientDbStatementCache.isQuery("insert into Hello select from Olleh")).isFalse();
+        assertThat(OrientDbStatementCache.isQuery("selected")).isFalse();
+        assertThat(OrientDbStatementCache.isQuery("\n\tselect\nfrom Hello")).isTrue();
+        assertThat(OrientDbStatementCache.isQuery("")).isFalse();
+    }
+
+    private static OrientDbRepoCommand command(final WOrientConf conf, final Map<String, String> statements) {
+        return new OrientDbRepoCommand() {
+            public WOrientConf getConf() {
+                return conf;
+            }
+            public List<Class<?>> getEntityClass() {
+                return Arrays.<Class<?>>asList(Hello.class);
+            }
+            public Map<String, String> getStatements() {
+                return statements;
+            }
+            public void init(OObjectDatabaseTx db) {
+            }
+            public void destroy(OObjectDatabaseTx db) {
+            }
+        };
+    }
+}
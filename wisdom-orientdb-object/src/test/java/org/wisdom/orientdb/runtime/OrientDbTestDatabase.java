@@ -0,0 +1,118 @@
+package org.wisdom.orientdb.runtime;
+
+import com.orientechnologies.orient.core.metadata.security.OSecurity;
+import com.orientechnologies.orient.object.db.OObjectDatabaseTx;
+import org.junit.rules.ExternalResource;
+import org.junit.rules.TemporaryFolder;
+import org.wisdom.orientdb.conf.WOrientConf;
+import org.wisdom.orientdb.model.Hello;
+import org.wisdom.orientdb.object.OrientDbRepoCommand;
+import org.wisdom.orientdb.othermodel.Olleh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.orientechnologies.orient.core.tx.OTransaction.TXTYPE.NOTX;
+
+/**
+ * A plocal database of the test entities, created in a temporary folder with the <code>test</code> admin user, and
+ * the repositories created on it by the tests.
+ *
+ * Use it as a <code>@ClassRule</code> and call {@link #destroyRepos()} after each test.
+ */
+class OrientDbTestDatabase extends ExternalResource {
+    private final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<OrientDbRepositoryImpl> repos = new ArrayList<>();
+
+    private String url;
+
+    @Override
+    protected void before() throws Throwable {
+        folder.create();
+        url = "plocal:" + folder.getRoot().getAbsolutePath();
+
+        try (
+            OObjectDatabaseTx db = new OObjectDatabaseTx(url).create();
+        ) {
+            OSecurity sm = db.getMetadata().getSecurity();
+            sm.createUser("test", "test", "admin");
+            db.getEntityManager().registerEntityClass(Hello.class);
+            db.getEntityManager().registerEntityClass(Olleh.class);
+        }
+    }
+
+    @Override
+    protected void after() {
+        destroyRepos();
+        folder.delete();
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    /**
+     * @param alias The alias of the configuration.
+     * @return A configuration of the database, without transaction.
+     */
+    WOrientConf conf(String alias) {
+        WOrientConf conf = new WOrientConf(alias, url, "test", "test",
+                Arrays.asList("org.wisdom.orientdb.model", "org.wisdom.orientdb.othermodel"));
+        conf.setTxType(NOTX);
+        return conf;
+    }
+
+    /**
+     * @return A repository of the given entities, destroyed by {@link #destroyRepos()}.
+     */
+    OrientDbRepositoryImpl newRepo(WOrientConf conf, Class<?>... entities) {
+        return newRepo(conf, new ArrayList<>(Arrays.asList(entities)));
+    }
+
+    /**
+     * @param entities The entities of the repository command, they can be changed by the test.
+     * @return A repository of the given entities, destroyed by {@link #destroyRepos()}.
+     */
+    OrientDbRepositoryImpl newRepo(WOrientConf conf, List<Class<?>> entities) {
+        return newRepo(command(conf, entities));
+    }
+
+    /**
+     * @return A repository of the given command, destroyed by {@link #destroyRepos()}.
+     */
+    OrientDbRepositoryImpl newRepo(OrientDbRepoCommand command) {
+        OrientDbRepositoryImpl repo = new OrientDbRepositoryImpl(command);
+        repos.add(repo);
+        return repo;
+    }
+
+    /**
+     * Destroy the repositories created since the last call, with their pool, executors and live queries.
+     */
+    void destroyRepos() {
+        for (OrientDbRepositoryImpl repo : repos) {
+            repo.destroy();
+        }
+        repos.clear();
+    }
+
+    /**
+     * @return A repository command without init and destroy callbacks.
+     */
+    static OrientDbRepoCommand command(final WOrientConf conf, final List<Class<?>> entities) {
+        return new OrientDbRepoCommand() {
+            public WOrientConf getConf() {
+                return conf;
+            }
+            public List<Class<?>> getEntityClass() {
+                return entities;
+            }
+            public void init(OObjectDatabaseTx db) {
+            }
+            public void destroy(OObjectDatabaseTx db) {
+            }
+        };
+    }
+}